@@ -0,0 +1,23 @@
+package com.cs261a.sudoku;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suite, reporting ops/s together with allocation per op from the GC profiler.
+ * An optional argument restricts the run to benchmarks matching that regex, e.g. "SolverBenchmark".
+ * Run through the build with "gradle jmh", or "gradle jmh -Pinclude=SolverBenchmark".
+ */
+public class BenchmarkRunner {
+
+    public static void main(String args[]) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "com\\.cs261a\\.sudoku\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
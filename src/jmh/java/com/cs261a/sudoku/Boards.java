@@ -0,0 +1,116 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.techniques.TechniqueFactory;
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.util.Random;
+
+/**
+ * Looks up the boards bundled with Solver by name, and builds fixed mid-solve states and larger random
+ * puzzles for benchmarks.
+ */
+public class Boards {
+
+    public static int[][] get(String name) {
+        switch (name) {
+            case "easyBoard":
+                return Solver.easyBoard;
+            case "easyBoardNearlySolved":
+                return Solver.easyBoardNearlySolved;
+            case "mediumBoard":
+                return Solver.mediumBoard;
+            case "medium2":
+                return Solver.medium2;
+            case "medium3":
+                return Solver.medium3;
+            case "hardBoard":
+                return Solver.hardBoard;
+            case "hard2":
+                return Solver.hard2;
+            case "easy17":
+                return Solver.easy17;
+            default:
+                throw new IllegalArgumentException("Unknown board: " + name);
+        }
+    }
+
+    /**
+     * Builds a grid for the named board and advances it by up to 'steps' technique applications,
+     * always applying the first applicable technique, the same way Solver does.
+     * Stops early if the grid is complete or no technique applies.
+     */
+    public static Grid midSolve(String name, int steps) throws Technique.BadTechniqueException {
+        Grid grid = new Grid(get(name));
+        for (int i = 0; i < steps && !grid.isComplete(); i++) {
+            TechniqueType techniqueType = TechniqueType.getFirst();
+            Technique technique = TechniqueFactory.getTechnique(techniqueType);
+            Finding finding;
+            while ((finding = technique.find(grid)) == null) {
+                techniqueType = techniqueType.next();
+                if (techniqueType == null)
+                    return grid;
+                technique = TechniqueFactory.getTechnique(techniqueType);
+            }
+            technique.apply(grid, finding);
+        }
+        return grid;
+    }
+
+    /**
+     * Builds a puzzle of any size from a seed: a solved grid shuffled by random band, row, stack, column and
+     * value permutations, with the given fraction of its cells emptied at random.
+     * @return the value of each cell, indexed as in Topology, 0 for empty cells
+     */
+    public static int[] blanked(Topology topology, double blankFraction, long seed) {
+        Random random = new Random(seed);
+        int box = topology.getBoxSize();
+        int size = topology.getSize();
+        int[] rows = shuffledLines(box, random);
+        int[] cols = shuffledLines(box, random);
+        int[] labels = shuffled(size, random);
+
+        int[] values = new int[topology.getNumCells()];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                // A valid solved grid: each row shifts the one above by a box, and each band by one
+                int r = rows[row], c = cols[col];
+                values[size * row + col] = 1 + labels[(box * (r % box) + r / box + c) % size];
+            }
+        }
+
+        int[] cells = shuffled(values.length, random);
+        for (int i = 0; i < (int) (blankFraction * values.length); i++) {
+            values[cells[i]] = 0;
+        }
+        return values;
+    }
+
+    // Line orders that keep bands (or stacks) together
+    private static int[] shuffledLines(int box, Random random) {
+        int[] bands = shuffled(box, random);
+        int[] lines = new int[box * box];
+        for (int b = 0; b < box; b++) {
+            int[] within = shuffled(box, random);
+            for (int i = 0; i < box; i++) {
+                lines[box * b + i] = box * bands[b] + within[i];
+            }
+        }
+        return lines;
+    }
+
+    private static int[] shuffled(int n, Random random) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+}
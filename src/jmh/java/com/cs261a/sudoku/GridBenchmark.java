@@ -0,0 +1,85 @@
+package com.cs261a.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Microbenchmarks for the Grid operations every solving step goes through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+    @Param({"easyBoard", "hardBoard", "easy17"})
+    public String board;
+
+    private int[][] init;
+    private Grid grid;
+
+    // construct and isValid don't change the grid, so one serves the whole trial
+    @Setup(Level.Trial)
+    public void setupBoard() {
+        init = Boards.get(board);
+        grid = new Grid(init);
+    }
+
+    @Benchmark
+    public Grid construct() {
+        return new Grid(init);
+    }
+
+    @Benchmark
+    public Grid determineCell(DetermineState state) {
+        state.grid.determineCell(state.grid.getCell(state.cellIndex), state.cellValue);
+        return state.grid;
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return grid.isValid();
+    }
+
+    /**
+     * determineCell changes the grid, so it gets its own, restored to the board's starting state before
+     * every invocation
+     */
+    @State(Scope.Thread)
+    public static class DetermineState {
+
+        private ByteBuffer encoded;
+        private Grid grid;
+
+        // The first undetermined cell of the board, and its smallest possible value
+        private int cellIndex;
+        private int cellValue;
+
+        @Setup(Level.Trial)
+        public void setup(GridBenchmark benchmark) {
+            grid = new Grid(benchmark.init);
+            for (cellIndex = 0; grid.getValue(cellIndex) != 0; cellIndex++);
+            cellValue = grid.getCell(cellIndex).getOnlyPossibleValue();
+            encoded = ByteBuffer.allocate(GridCodec.getEncodedLength(grid.getTopology()));
+            GridCodec.encode(grid, encoded);
+        }
+
+        @Setup(Level.Invocation)
+        public void restore() {
+            encoded.rewind();
+            GridCodec.decode(encoded, grid);
+        }
+    }
+}
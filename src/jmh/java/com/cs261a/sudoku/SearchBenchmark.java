@@ -0,0 +1,51 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.engine.BacktrackingSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BacktrackingSearch finding the first solution of random puzzles with 55% of their cells empty, up to 25x25,
+ * where the time per puzzle varies the most from one seed to the next.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"3", "4", "5"})
+    public int boxSize;
+
+    @Param({"0", "1", "2", "3"})
+    public long seed;
+
+    private Topology topology;
+    private int[] values;
+    private BacktrackingSearch search;
+
+    @Setup
+    public void setup() {
+        topology = Topology.of(boxSize);
+        values = Boards.blanked(topology, 0.55, seed);
+        search = new BacktrackingSearch();
+    }
+
+    @Benchmark
+    public int firstSolution() {
+        return search.countSolutions(topology, values, null, 1);
+    }
+}
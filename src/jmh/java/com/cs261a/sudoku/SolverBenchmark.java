@@ -0,0 +1,47 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.techniques.Technique;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * End to end benchmark of Solver.solvePuzzle on each of the bundled boards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+    @Param({"easyBoard", "mediumBoard", "medium2", "medium3", "hardBoard", "hard2", "easy17"})
+    public String board;
+
+    private int[][] init;
+    private Solver solver;
+
+    @Setup
+    public void setup() {
+        init = Boards.get(board);
+        solver = new Solver();
+    }
+
+    @Benchmark
+    public void solvePuzzle(Blackhole bh) throws Technique.BadTechniqueException {
+        try {
+            solver.solvePuzzle(init);
+        } catch (Solver.InsufficientTechniquesException e) {
+            // Boards our techniques can't finish are still measured up to the point they get stuck
+            bh.consume(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.techniques.TechniqueFactory;
+import com.cs261a.sudoku.techniques.TechniqueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Microbenchmarks for each Technique's find/apply pair, on fixed mid-solve states of the bundled boards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TechniqueBenchmark {
+
+    @Param({"FullHouse", "HiddenSingle", "NakedSingle", "Pointing", "NakedPair", "HiddenPair",
+            "NakedTriple", "HiddenTriple", "NakedQuad", "HiddenQuad"})
+    public TechniqueType type;
+
+    @Param({"easyBoard", "mediumBoard", "hardBoard"})
+    public String board;
+
+    // Number of solving steps taken before the state is measured
+    @Param({"10"})
+    public int steps;
+
+    // CandidateScanner backend; "vector" needs a build with -Pvector
+    @Param({"scalar"})
+    public String scanner;
+
+    private Grid grid;
+    private Technique technique;
+    private Finding finding;
+
+    // find only reads the grid, so one state serves the whole trial
+    @Setup(Level.Trial)
+    public void setup() throws Technique.BadTechniqueException {
+        CandidateScanner.useVector(scanner.equals("vector"));
+        grid = Boards.midSolve(board, steps);
+        technique = TechniqueFactory.getTechnique(type);
+        finding = technique.find(grid);
+    }
+
+    @Benchmark
+    public Finding find() throws Technique.BadTechniqueException {
+        return technique.find(grid);
+    }
+
+    @Benchmark
+    public Grid apply(ApplyState state) throws Technique.BadTechniqueException {
+        technique.apply(state.grid, finding);
+        return state.grid;
+    }
+
+    /**
+     * apply changes the grid, so it gets its own copy of the mid-solve state, restored before every invocation
+     */
+    @State(Scope.Thread)
+    public static class ApplyState {
+
+        private ByteBuffer encoded;
+        private Grid grid;
+
+        @Setup(Level.Trial)
+        public void setup(TechniqueBenchmark benchmark) {
+            // Without a finding there is nothing to apply, and the result would only time an empty call
+            if(benchmark.finding == null)
+                throw new IllegalStateException(benchmark.type + " finds nothing to apply on " + benchmark.board
+                                                + " after " + benchmark.steps + " steps");
+            encoded = ByteBuffer.allocate(GridCodec.getEncodedLength(benchmark.grid.getTopology()));
+            GridCodec.encode(benchmark.grid, encoded);
+            grid = Grid.empty(benchmark.grid.getTopology());
+        }
+
+        @Setup(Level.Invocation)
+        public void restore() {
+            encoded.rewind();
+            GridCodec.decode(encoded, grid);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.cache.SolutionCache;
+import com.cs261a.sudoku.corpus.CorpusReader;
+import com.cs261a.sudoku.corpus.CorpusWriter;
+import com.cs261a.sudoku.engine.HybridEngine;
+import com.cs261a.sudoku.engine.SolvingEngine;
+import com.cs261a.sudoku.engine.TechniqueEngine;
+import com.cs261a.sudoku.metrics.TechniqueMetrics;
+import com.cs261a.sudoku.techniques.Technique;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Solves batches of puzzles across all cores.
+ * Puzzles are 81 character lines, row by row, with '0' or '.' for empty cells. Lines of 256 or 625 characters
+ * hold 16x16 or 25x25 puzzles, with letters for values over 9 (see Grid.charToValue); those are only
+ * read with -text, as mapped files must hold 9x9 puzzles. Corpus files (see CorpusWriter) can be read too.
+ * Each puzzle gives one result line, in input order: the solution if solved,
+ * otherwise the grid as far as the techniques got with '.' for undetermined cells.
+ * A line that is not a puzzle, or that the solver fails on, gives the line "invalid", and the batch goes on.
+ * Results can instead be written as a corpus, of each puzzle with its solution if solved.
+ * Given a SolutionCache, 9x9 puzzles already solved are answered from it, and new solutions are added to it.
+ */
+public class BatchSolver {
+
+    // Number of lines read, solved and written at a time, so huge files don't need to fit in memory
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    // Bytes per result line of a mapped file: the 81 cells and a newline. Invalid lines are shorter.
+    private static final int RESULT_LENGTH = 82;
+
+    // Result line of a puzzle that could not be read or solved
+    public static final String INVALID_RESULT = "invalid";
+
+    private final ForkJoinPool pool;
+    private final Solver solver;
+    private final SolutionCache cache;
+
+    /**
+     * Creates a batch solver using the logical techniques only, with one worker thread per available processor
+     */
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSolver(int parallelism) {
+        this(parallelism, new TechniqueEngine());
+    }
+
+    /**
+     * @param engine - shared by all worker threads, so it must be thread safe
+     */
+    public BatchSolver(int parallelism, SolvingEngine engine) {
+        this(parallelism, engine, null);
+    }
+
+    /**
+     * @param engine - shared by all worker threads, so it must be thread safe
+     * @param cache - holds solutions of puzzles already solved, or null to solve every puzzle
+     */
+    public BatchSolver(int parallelism, SolvingEngine engine, SolutionCache cache) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.solver = new Solver(engine);
+        this.cache = cache;
+    }
+
+    /**
+     * Converts an 81 character puzzle line into a 9x9 board, with 0 for empty cells. Lines of 16, 256 or 625
+     * characters give 4x4, 16x16 or 25x25 boards, with characters as in Grid.charToValue.
+     * @throws IllegalArgumentException if the line is not 81 characters of '1'-'9', '0' or '.',
+     *                                  or a larger or smaller puzzle of valid characters
+     */
+    public static int[][] parsePuzzle(CharSequence line) {
+        Topology topology = Topology.forNumCells(line.length());
+        if(topology == null)
+            throw new IllegalArgumentException("Error: Puzzle line must have 81 characters, found " + line.length());
+
+        int size = topology.getSize();
+        int[][] board = new int[size][size];
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int value = Grid.charToValue(c);
+            if(value < 0 || value > size)
+                throw new IllegalArgumentException("Error: Invalid character '" + c + "' in puzzle line at " + i);
+            board[i / size][i % size] = value;
+        }
+        return board;
+    }
+
+    /**
+     * Solves a single puzzle line, returning its result, which is invalid if the line is not a puzzle or the
+     * solver fails on it.
+     */
+    public PuzzleResult solvePuzzle(String line) {
+        try {
+            Grid grid = solveQuietly(new Grid(parsePuzzle(line)));
+            return new PuzzleResult(grid.toPuzzleString(), grid.isComplete());
+        } catch (RuntimeException e) {
+            // One bad line must not cost the rest of the batch
+            return PuzzleResult.INVALID;
+        }
+    }
+
+    /**
+     * Solves the grid in place; if the solver gives up, the grid is left as far as it got.
+     * Returns the grid, or a new solved grid if the cache holds the puzzle's solution.
+     */
+    private Grid solveQuietly(Grid grid) {
+        String puzzle = cache != null && grid.getTopology() == Topology.STANDARD ? grid.toPuzzleString() : null;
+        if(puzzle != null) {
+            SolutionCache.Entry entry = cache.get(puzzle);
+            if(entry != null && entry.getSolution() != null)
+                return new Grid(parsePuzzle(entry.getSolution()));
+        }
+
+        try {
+            solver.solve(grid);
+        } catch (Solver.InsufficientTechniquesException | Technique.BadTechniqueException e) {
+            // Fall through and report the grid as far as we got
+        }
+        // Only solutions are cached, so an unsolved puzzle is tried again each time
+        if(puzzle != null && grid.isComplete())
+            cache.put(puzzle, grid.toPuzzleString(), null);
+        return grid;
+    }
+
+    /**
+     * Solves every puzzle line in parallel, returning the results in the same order.
+     */
+    public List<PuzzleResult> solveAll(List<String> lines) {
+        return Pools.invoke(pool, () -> lines.parallelStream()
+                                             .map(this::solvePuzzle)
+                                             .collect(Collectors.toList()));
+    }
+
+    /**
+     * Solves every puzzle of a chunk of a mapped corpus, returning the result lines (81 bytes plus '\n' each, or
+     * INVALID_RESULT and '\n' for a malformed record) in the same order.
+     */
+    public byte[] solveChunk(MappedPuzzleReader.Chunk chunk) {
+        return solveLines(chunk.getNumPuzzles(), chunk::getGrid).bytes;
+    }
+
+    /**
+     * Solves every puzzle of a chunk of a corpus file, returning the result lines (81 bytes plus '\n' each, or
+     * INVALID_RESULT and '\n' for a record the solver fails on) in the same order.
+     */
+    public byte[] solveChunk(CorpusReader.Chunk chunk) {
+        return solveLines(chunk.getNumRecords(), chunk::getGrid).bytes;
+    }
+
+    private Results solveLines(int numPuzzles, IntFunction<Grid> grids) {
+        byte[] results = new byte[RESULT_LENGTH * numPuzzles];
+        int length = 0;
+        int numSolved = 0;
+        int numInvalid = 0;
+        for (int i = 0; i < numPuzzles; i++) {
+            try {
+                Grid grid = solveQuietly(grids.apply(i));
+                grid.toPuzzleBytes(results, length);
+                if(grid.isComplete())
+                    numSolved++;
+                length += 81;
+            } catch (RuntimeException e) {
+                numInvalid++;
+                for (int j = 0; j < INVALID_RESULT.length(); j++) {
+                    results[length++] = (byte) INVALID_RESULT.charAt(j);
+                }
+            }
+            results[length++] = '\n';
+        }
+        return new Results(length == results.length ? results : Arrays.copyOf(results, length),
+                           numPuzzles, numSolved, numInvalid);
+    }
+
+    /**
+     * Solves each puzzle, returning its corpus record, with its solution if solved, or an invalid record if it
+     * could not be read or solved
+     */
+    private Results solveRecords(int numPuzzles, IntFunction<Grid> grids) {
+        byte[] records = new byte[CorpusWriter.MAX_RECORD_LENGTH * numPuzzles];
+        int length = 0;
+        int numSolved = 0;
+        int numInvalid = 0;
+        int[] givens = new int[81];
+        int[] solution = new int[81];
+        for (int i = 0; i < numPuzzles; i++) {
+            try {
+                Grid grid = grids.apply(i);
+                for (int cell = 0; cell < 81; cell++) {
+                    givens[cell] = grid.getValue(cell);
+                }
+                grid = solveQuietly(grid);
+                boolean solved = grid.isComplete();
+                if(solved) {
+                    numSolved++;
+                    for (int cell = 0; cell < 81; cell++) {
+                        solution[cell] = grid.getValue(cell);
+                    }
+                }
+                length += CorpusWriter.encode(givens, solved ? solution : null, null, records, length);
+            } catch (RuntimeException e) {
+                numInvalid++;
+                length += CorpusWriter.encodeInvalid(records, length);
+            }
+        }
+        return new Results(Arrays.copyOf(records, length), numPuzzles, numSolved, numInvalid);
+    }
+
+    /**
+     * Shuts down this solver's pool once the batches running on it finish; no more can be started
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Reads puzzles from a file, one per line, and writes one result line per puzzle to out, in input order.
+     * Blank lines are skipped.
+     * @return summary of how many puzzles were solved and how fast
+     */
+    public Summary solveFile(Path puzzleFile, Writer out) throws IOException {
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+
+        try (BufferedReader reader = Files.newBufferedReader(puzzleFile, StandardCharsets.US_ASCII)) {
+            List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.isEmpty())
+                    continue;
+                chunk.add(line);
+                if(chunk.size() == CHUNK_SIZE) {
+                    writeResults(solveAll(chunk), out, summary);
+                    chunk.clear();
+                }
+            }
+            writeResults(solveAll(chunk), out, summary);
+        }
+        out.flush();
+
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Memory maps a file of puzzle lines (see MappedPuzzleReader) and writes one result line
+     * per puzzle to out, in input order. Chunks of the file are solved in parallel, a window at a time.
+     * @return summary of how many puzzles were solved and how fast
+     */
+    public Summary solveMappedFile(Path puzzleFile, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Summary summary;
+        try (MappedPuzzleReader reader = new MappedPuzzleReader(puzzleFile)) {
+            summary = solveChunks(reader.chunks(CHUNK_SIZE), chunk -> solveLines(chunk.getNumPuzzles(), chunk::getGrid),
+                                  out::write);
+        }
+        out.flush();
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Memory maps a file of puzzle lines (see MappedPuzzleReader) and writes each puzzle, with its
+     * solution if solved, to a corpus, in input order. The writer is left open.
+     * @return summary of how many puzzles were solved and how fast
+     */
+    public Summary solveMappedFile(Path puzzleFile, CorpusWriter out) throws IOException {
+        long start = System.nanoTime();
+        Summary summary;
+        try (MappedPuzzleReader reader = new MappedPuzzleReader(puzzleFile)) {
+            summary = solveChunks(reader.chunks(CHUNK_SIZE),
+                                  chunk -> solveRecords(chunk.getNumPuzzles(), chunk::getGrid),
+                                  records -> out.writeRecords(ByteBuffer.wrap(records)));
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Memory maps a corpus file (see CorpusReader) and writes one result line per puzzle to out, in input order.
+     * Stored solutions and ratings are ignored: every puzzle is solved.
+     * @return summary of how many puzzles were solved and how fast
+     */
+    public Summary solveCorpusFile(Path corpusFile, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Summary summary;
+        try (CorpusReader reader = new CorpusReader(corpusFile)) {
+            summary = solveChunks(reader.chunks(CHUNK_SIZE), chunk -> solveLines(chunk.getNumRecords(), chunk::getGrid),
+                                  out::write);
+        }
+        out.flush();
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Memory maps a corpus file and writes each puzzle, with its solution if solved, to another corpus, in input
+     * order. Stored solutions and ratings are ignored: every puzzle is solved. The writer is left open.
+     * @return summary of how many puzzles were solved and how fast
+     */
+    public Summary solveCorpusFile(Path corpusFile, CorpusWriter out) throws IOException {
+        long start = System.nanoTime();
+        Summary summary;
+        try (CorpusReader reader = new CorpusReader(corpusFile)) {
+            summary = solveChunks(reader.chunks(CHUNK_SIZE),
+                                  chunk -> solveRecords(chunk.getNumRecords(), chunk::getGrid),
+                                  records -> out.writeRecords(ByteBuffer.wrap(records)));
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Solves chunks in parallel, a window at a time, and writes their results in order
+     */
+    private <C> Summary solveChunks(List<C> chunks, Function<C, Results> solve, ResultWriter out) throws IOException {
+        Summary summary = new Summary();
+        // Enough chunks per window to keep every worker busy, without holding results for the whole file
+        int window = 4 * pool.getParallelism();
+        for (int i = 0; i < chunks.size(); i += window) {
+            List<C> windowChunks = chunks.subList(i, Math.min(chunks.size(), i + window));
+            List<Results> results = Pools.invoke(pool, () -> windowChunks.parallelStream()
+                                                                         .map(solve)
+                                                                         .collect(Collectors.toList()));
+            for (Results chunkResults : results) {
+                summary.numPuzzles += chunkResults.numPuzzles;
+                summary.numSolved += chunkResults.numSolved;
+                summary.numInvalid += chunkResults.numInvalid;
+                out.write(chunkResults.bytes);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * A chunk's results, as lines or corpus records, and how many of its puzzles were solved or invalid
+     */
+    private static class Results {
+        private final byte[] bytes;
+        private final int numPuzzles;
+        private final int numSolved;
+        private final int numInvalid;
+
+        Results(byte[] bytes, int numPuzzles, int numSolved, int numInvalid) {
+            this.bytes = bytes;
+            this.numPuzzles = numPuzzles;
+            this.numSolved = numSolved;
+            this.numInvalid = numInvalid;
+        }
+    }
+
+    private interface ResultWriter {
+        void write(byte[] results) throws IOException;
+    }
+
+    private static void writeResults(List<PuzzleResult> results, Writer out, Summary summary) throws IOException {
+        for (PuzzleResult result : results) {
+            summary.numPuzzles++;
+            if(result.isInvalid())
+                summary.numInvalid++;
+            else if(result.isSolved())
+                summary.numSolved++;
+            out.write(result.getLine());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * The result of solving one puzzle line: its result line, and whether the puzzle was solved or invalid
+     */
+    public static final class PuzzleResult {
+        static final PuzzleResult INVALID = new PuzzleResult(INVALID_RESULT, false);
+
+        private final String line;
+        private final boolean solved;
+
+        PuzzleResult(String line, boolean solved) {
+            this.line = line;
+            this.solved = solved;
+        }
+
+        /**
+         * Returns the result line: the solution if solved, the grid as far as the solver got if not, or
+         * INVALID_RESULT
+         */
+        public String getLine() { return line; }
+
+        public boolean isSolved() { return solved; }
+
+        /**
+         * Returns true if the line was not a puzzle or the solver failed on it
+         */
+        public boolean isInvalid() { return this == INVALID; }
+
+        @Override
+        public String toString() {
+            return line;
+        }
+    }
+
+    /**
+     * Counts and timing for a batch run.
+     */
+    public static class Summary {
+        private long numPuzzles;
+        private long numSolved;
+        private long numInvalid;
+        private long elapsedNanos;
+
+        public long getNumPuzzles() { return numPuzzles; }
+
+        public long getNumSolved() { return numSolved; }
+
+        /**
+         * Returns the number of puzzles that could not be read or solved, given INVALID_RESULT
+         */
+        public long getNumInvalid() { return numInvalid; }
+
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double getPuzzlesPerSecond() {
+            return elapsedNanos == 0 ? 0 : numPuzzles * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d puzzles, %d solved, %d unsolved, %d invalid in %.3f s (%.1f puzzles/s)",
+                    numPuzzles, numSolved, numPuzzles - numSolved - numInvalid, numInvalid, elapsedNanos / 1e9,
+                    getPuzzlesPerSecond());
+        }
+    }
+
+    /**
+     * Usage: BatchSolver [-techniques] [-text] [-corpus] [-metrics] [-vector] [-cache mb] [-threads n] puzzleFile [outputFile]
+     * Results go to outputFile, or System.out if not given. The summary is printed to System.err.
+     * By default the hybrid engine is used, which falls back to search when the techniques get stuck;
+     * -techniques uses the techniques only. Both apply every finding of a technique per pass, as only the
+     * result is written.
+     * By default puzzleFile is memory mapped and must hold 9x9 puzzles; -text reads it line by line instead, allowing
+     * larger puzzles. A corpus file (see CorpusWriter) is recognized by its header and read as one.
+     * -corpus writes the results as a corpus, of each puzzle with its solution if solved; it can't be used with -text.
+     * -metrics enables TechniqueMetrics, registers its MBean, and prints its counters after the summary.
+     * -vector switches CandidateScanner to its vector backend, if available.
+     * -cache answers repeated 9x9 puzzles from a SolutionCache of the given size in megabytes, and prints its
+     * counters after the summary.
+     */
+    public static void main(String args[]) throws IOException {
+        boolean techniquesOnly = false;
+        boolean text = false;
+        boolean corpus = false;
+        boolean metrics = false;
+        long cacheBytes = 0;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int arg = 0;
+        for (; arg < args.length && args[arg].startsWith("-"); arg++) {
+            if(args[arg].equals("-techniques")) {
+                techniquesOnly = true;
+            } else if(args[arg].equals("-text")) {
+                text = true;
+            } else if(args[arg].equals("-corpus")) {
+                corpus = true;
+            } else if(args[arg].equals("-metrics")) {
+                metrics = true;
+            } else if(args[arg].equals("-vector")) {
+                if(!CandidateScanner.useVector(true))
+                    System.err.println("Vector scanner not available, using " + CandidateScanner.get());
+            } else if(args[arg].equals("-cache") && arg + 1 < args.length) {
+                cacheBytes = Long.parseLong(args[++arg]) << 20;
+            } else if(args[arg].equals("-threads") && arg + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++arg]);
+            } else {
+                arg = args.length;
+            }
+        }
+        if(arg >= args.length || (text && corpus)) {
+            System.err.println("Usage: BatchSolver [-techniques] [-text] [-corpus] [-metrics] [-vector] [-cache mb] [-threads n] puzzleFile [outputFile]");
+            System.exit(1);
+        }
+
+        if(metrics) {
+            TechniqueMetrics.INSTANCE.setEnabled(true);
+            TechniqueMetrics.INSTANCE.registerMBean();
+        }
+
+        SolvingEngine engine = techniquesOnly ? new TechniqueEngine(true) : new HybridEngine(true);
+        SolutionCache cache = cacheBytes > 0 ? new SolutionCache(cacheBytes) : null;
+        BatchSolver batchSolver = new BatchSolver(parallelism, engine, cache);
+        Path puzzleFile = Paths.get(args[arg]);
+        OutputStream out = arg + 1 < args.length ? Files.newOutputStream(Paths.get(args[arg + 1])) : System.out;
+
+        Summary summary;
+        try (OutputStream bufferedOut = new BufferedOutputStream(out, 1 << 16)) {
+            boolean corpusInput = !text && CorpusReader.isCorpus(puzzleFile);
+            if(text) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(bufferedOut, StandardCharsets.US_ASCII));
+                summary = batchSolver.solveFile(puzzleFile, writer);
+            } else if(corpus) {
+                try (CorpusWriter writer = new CorpusWriter(bufferedOut)) {
+                    summary = corpusInput ? batchSolver.solveCorpusFile(puzzleFile, writer)
+                                          : batchSolver.solveMappedFile(puzzleFile, writer);
+                }
+            } else if(corpusInput) {
+                summary = batchSolver.solveCorpusFile(puzzleFile, bufferedOut);
+            } else {
+                summary = batchSolver.solveMappedFile(puzzleFile, bufferedOut);
+            }
+        }
+        System.err.println(summary);
+        if(metrics)
+            System.err.println(TechniqueMetrics.INSTANCE.snapshot());
+        if(cache != null)
+            System.err.println(cache);
+    }
+}
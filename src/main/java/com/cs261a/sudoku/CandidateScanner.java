@@ -0,0 +1,137 @@
+package com.cs261a.sudoku;
+
+/**
+ * Scans all of a grid's candidate masks at once for the patterns the simplest techniques look for.
+ * The scalar backend, used by default, walks the masks a cell at a time. The vector backend (VectorScanner,
+ * built from src/vector/java) compares a whole vector register of masks per instruction using the
+ * jdk.incubator.vector API. It is chosen with -Dsudoku.scanner=vector or useVector(true), and needs
+ * --add-modules jdk.incubator.vector at compile and run time; without it the scalar backend stays in use.
+ * Scanners hold no state, so one instance is shared by all threads.
+ */
+public abstract class CandidateScanner {
+
+    public static final String PROPERTY = "sudoku.scanner";
+
+    private static final CandidateScanner SCALAR = new ScalarScanner();
+
+    // The vector backend, or null if it isn't on the class path or its module isn't loaded
+    private static final CandidateScanner VECTOR = loadVectorScanner();
+
+    private static volatile CandidateScanner current =
+            "vector".equals(System.getProperty(PROPERTY)) && VECTOR != null ? VECTOR : SCALAR;
+
+    private static CandidateScanner loadVectorScanner() {
+        try {
+            return (CandidateScanner) Class.forName("com.cs261a.sudoku.VectorScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the backend in use
+     */
+    public static CandidateScanner get() {
+        return current;
+    }
+
+    /**
+     * Returns the scalar backend, for backends to fall back on for grids they don't handle
+     */
+    static CandidateScanner scalar() {
+        return SCALAR;
+    }
+
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Switches between the vector and scalar backends.
+     * @return true if the vector backend is now in use, false if it was turned off or is not available
+     */
+    public static boolean useVector(boolean enabled) {
+        current = enabled && VECTOR != null ? VECTOR : SCALAR;
+        return current == VECTOR;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Finds the undetermined cells with exactly one possible value.
+     * @param cells - set to the cells found, one bit per cell index (see Finding), with a word for every 64 cells
+     * @return the number of cells found
+     */
+    public abstract int findSingleCandidateCells(Grid grid, long[] cells);
+
+    /**
+     * Finds, for each box-line intersection (numbered as in Topology), the values which within its block are
+     * possible in two or more cells of the intersection and nowhere else, and are still possible in the rest
+     * of its row or column.
+     * @param pointingVals - set to the value mask of each of the grid's intersections
+     */
+    public abstract void findPointingVals(Grid grid, int[] pointingVals);
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Checks one cell or intersection at a time
+     */
+    private static class ScalarScanner extends CandidateScanner {
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public int findSingleCandidateCells(Grid grid, long[] cells) {
+            int[] candidates = grid.candidateArray();
+            int count = 0;
+            for (int word = 0; word < cells.length; word++) {
+                long bits = 0;
+                int end = Math.min(candidates.length, 64*word + 64);
+                for (int index = 64*word; index < end; index++) {
+                    int mask = candidates[index];
+                    if(mask != 0 && (mask & (mask - 1)) == 0)
+                        bits |= 1L << index;
+                }
+                cells[word] = bits;
+                count += Long.bitCount(bits);
+            }
+            return count;
+        }
+
+        @Override
+        public void findPointingVals(Grid grid, int[] pointingVals) {
+            int[] candidates = grid.candidateArray();
+            Topology topology = grid.getTopology();
+            for (int intersection = 0; intersection < topology.getNumIntersections(); intersection++) {
+                // Make sure one combination of two or more cells contains the number
+                int inOneOrMore = 0, inTwoOrMore = 0;
+                for (int index : topology.getIntersectionCells()[intersection]) {
+                    int mask = candidates[index];
+                    inTwoOrMore |= inOneOrMore & mask;
+                    inOneOrMore |= mask;
+                }
+                if(inTwoOrMore == 0) {
+                    pointingVals[intersection] = 0;
+                    continue;
+                }
+
+                int restOfBlock = 0;
+                for (int index : topology.getIntersectionRestOfBlock()[intersection]) {
+                    restOfBlock |= candidates[index];
+                }
+                int restOfLine = 0;
+                for (int index : topology.getIntersectionRestOfLine()[intersection]) {
+                    restOfLine |= candidates[index];
+                }
+                pointingVals[intersection] = inTwoOrMore & ~restOfBlock & restOfLine;
+            }
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.cs261a.sudoku;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maps a puzzle to one representative of all the puzzles equivalent to it, so equivalent puzzles share
+ * cache and dedup keys. Two puzzles are equivalent if one becomes the other by relabeling digits,
+ * permuting rows within bands and columns within stacks, permuting bands and stacks, and transposing.
+ * The representative is the lexicographically smallest 81 character string ('0' for empty cells) over
+ * all of those transforms, with digits relabeled in order of first appearance.
+ *
+ * The search runs, for both orientations and each of the 1296 column orders that can give the smallest
+ * first row, a depth first search over the row orders. A branch stops as soon as its rows compare greater
+ * than the best found so far, so typical puzzles are settled a few rows deep. Swapping two identical rows or
+ * columns, or two bands or stacks made of the same lines, leaves the grid unchanged, so only one order of
+ * them is searched, and a grid equal to its transpose is searched in one orientation. Without that, sparse
+ * grids cost the most, since few branches can be cut: the empty grid took about 500 ms. With it, a sparse
+ * grid takes at most a few milliseconds, and a typical puzzle about 0.3 ms, spent mostly on the hundreds of
+ * column orders that tie on the first row.
+ * Only 9x9 puzzles are supported. All methods are stateless and thread safe.
+ */
+public class Canonicalizer {
+
+    // The 6 orders of 3 things
+    private static final int[][] PERMUTATIONS = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+    };
+
+    private static final int NUM_COL_ORDERS = 6 * 6 * 6 * 6;
+
+    // All 1296 column orders that keep stacks together: COL_ORDERS[k][j] is the source column of column j.
+    // k = 216*a + 36*b + 6*c + d for stack order a and orders b, c, d within the first, second and third stacks.
+    private static final int[][] COL_ORDERS = buildColOrders();
+
+    // Greater than every cell value, so the best rows not yet searched compare greater than any real row
+    private static final int UNSET = 10;
+
+    private static int[][] buildColOrders() {
+        int[][] orders = new int[NUM_COL_ORDERS][9];
+        int k = 0;
+        for (int[] stacks : PERMUTATIONS) {
+            for (int[] first : PERMUTATIONS) {
+                for (int[] second : PERMUTATIONS) {
+                    for (int[] third : PERMUTATIONS) {
+                        int[][] within = {first, second, third};
+                        for (int s = 0; s < 3; s++) {
+                            for (int i = 0; i < 3; i++) {
+                                orders[k][3 * s + i] = 3 * stacks[s] + within[s][i];
+                            }
+                        }
+                        k++;
+                    }
+                }
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Returns the canonical form of an 81 character puzzle line, and the transform that produced it.
+     * @throws IllegalArgumentException if the line is not 81 characters of '1'-'9', '0' or '.'
+     */
+    public static CanonicalForm canonicalize(CharSequence puzzle) {
+        return canonicalize(toCells(BatchSolver.parsePuzzle(puzzle)));
+    }
+
+    /**
+     * Returns the canonical form of the grid's determined cells, and the transform that produced it
+     * @throws IllegalArgumentException if the grid is not 9x9
+     */
+    public static CanonicalForm canonicalize(Grid grid) {
+        if(grid.getTopology() != Topology.STANDARD)
+            throw new IllegalArgumentException("Error: Only 9x9 grids can be canonicalized, not " + grid.getTopology());
+
+        int[] cells = new int[81];
+        for (int index = 0; index < 81; index++) {
+            cells[index] = grid.getValue(index);
+        }
+        return canonicalize(cells);
+    }
+
+    private static CanonicalForm canonicalize(int[] cells) {
+        int[][] sources = new int[2][81];
+        for (int index = 0; index < 81; index++) {
+            sources[0][index] = cells[index];
+            sources[1][index] = cells[9 * (index % 9) + index / 9];
+        }
+
+        // The first row's digits are always labeled 1, 2, 3... in order, so how it compares depends only on
+        // which of its cells are empty. Only the column orders and rows giving the emptiest first row are searched.
+        int[][] firstRows = {firstRows(sources[0]), firstRows(sources[1])};
+        int minKey = Integer.MAX_VALUE;
+        for (int[] keys : firstRows) {
+            for (int key : keys) {
+                minKey = Math.min(minKey, key >>> 9);
+            }
+        }
+
+        // A grid equal to its transpose gives the same searches in both orientations
+        int numOrientations = Arrays.equals(sources[0], sources[1]) ? 1 : 2;
+        Search search = new Search();
+        for (int t = 0; t < numOrientations; t++) {
+            search.setSource(sources[t], t == 1);
+
+            // Column orders differing only in the order of identical columns lay out the same grid
+            int[] colIds = lineIds(sources[t], true);
+            Set<Long> searched = hasDuplicates(colIds) ? new HashSet<Long>() : null;
+            for (int k = 0; k < NUM_COL_ORDERS; k++) {
+                if(firstRows[t][k] >>> 9 != minKey)
+                    continue;
+                if(searched != null && !searched.add(colSignature(colIds, COL_ORDERS[k])))
+                    continue;
+                search.colOrder = COL_ORDERS[k];
+                search.searchFirstRows(firstRows[t][k] & 0x1FF);
+            }
+        }
+
+        StringBuilder str = new StringBuilder(81);
+        for (int index = 0; index < 81; index++) {
+            str.append((char) ('0' + search.best[index]));
+        }
+        return new CanonicalForm(str.toString(), new Transform(search.bestTransposed, search.bestRowOrder,
+                                                               search.bestColOrder, search.bestDigitMap));
+    }
+
+    /**
+     * Returns, for each column order, the smallest key of any row placed first, shifted left 9 bits, or'ed
+     * with the mask of rows giving that key. A row's key is the 9 bit mask of its non-empty cells, first
+     * column in the high bit; a smaller key means a smaller first row.
+     */
+    private static int[] firstRows(int[] source) {
+        // stackBits[row][stack][order] is the 3 bit mask of the row's non-empty cells in the stack, reordered
+        int[][][] stackBits = new int[9][3][6];
+        for (int row = 0; row < 9; row++) {
+            for (int stack = 0; stack < 3; stack++) {
+                for (int p = 0; p < 6; p++) {
+                    int bits = 0;
+                    for (int i = 0; i < 3; i++) {
+                        if(source[9 * row + 3 * stack + PERMUTATIONS[p][i]] != 0)
+                            bits |= 4 >> i;
+                    }
+                    stackBits[row][stack][p] = bits;
+                }
+            }
+        }
+
+        int[] keys = new int[NUM_COL_ORDERS];
+        int k = 0;
+        for (int[] stacks : PERMUTATIONS) {
+            for (int first = 0; first < 6; first++) {
+                for (int second = 0; second < 6; second++) {
+                    for (int third = 0; third < 6; third++) {
+                        int minKey = Integer.MAX_VALUE;
+                        int rows = 0;
+                        for (int row = 0; row < 9; row++) {
+                            int key = stackBits[row][stacks[0]][first] << 6
+                                      | stackBits[row][stacks[1]][second] << 3
+                                      | stackBits[row][stacks[2]][third];
+                            if(key < minKey) {
+                                minKey = key;
+                                rows = 0;
+                            }
+                            if(key == minKey)
+                                rows |= 1 << row;
+                        }
+                        keys[k++] = minKey << 9 | rows;
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns, for each row (or column) of the source, the first row (or column) with the same cells
+     */
+    private static int[] lineIds(int[] source, boolean columns) {
+        int[] ids = new int[9];
+        for (int line = 0; line < 9; line++) {
+            ids[line] = line;
+            for (int other = 0; other < line; other++) {
+                if(linesEqual(source, columns, line, other)) {
+                    ids[line] = other;
+                    break;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static boolean linesEqual(int[] source, boolean columns, int a, int b) {
+        for (int i = 0; i < 9; i++) {
+            int valA = columns ? source[9 * i + a] : source[9 * a + i];
+            int valB = columns ? source[9 * i + b] : source[9 * b + i];
+            if(valA != valB)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasDuplicates(int[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            if(ids[i] != i)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a key that is the same for two column orders exactly when they lay out the same grid
+     */
+    private static long colSignature(int[] colIds, int[] colOrder) {
+        long signature = 0;
+        for (int col = 0; col < 9; col++) {
+            signature = signature << 4 | colIds[colOrder[col]];
+        }
+        return signature;
+    }
+
+    private static int[] toCells(int[][] board) {
+        if(board.length != 9)
+            throw new IllegalArgumentException("Error: Only 9x9 puzzles can be canonicalized, not "
+                                               + board.length + "x" + board.length);
+
+        int[] cells = new int[81];
+        for (int index = 0; index < 81; index++) {
+            cells[index] = board[index / 9][index % 9];
+        }
+        return cells;
+    }
+
+    /**
+     * State of one canonicalization: the source grid in the orientation being searched, the rows and
+     * digit labels chosen at each depth, and the best grid found so far.
+     */
+    private static class Search {
+        final int[] source = new int[81];
+        boolean transposed;
+        int[] colOrder;
+        // The first row with the same cells as each row, and the first band with the same rows as each band
+        int[] rowIds;
+        final int[] bandIds = new int[3];
+
+        final int[] rowOrder = new int[9];
+        // digitMaps[level][d] is the label given to source digit d after choosing rows 0 to level-1, 0 if none yet
+        final int[][] digitMaps = new int[10][10];
+        final int[] nextLabel = new int[10];
+        final int[] rowCells = new int[9];
+
+        final int[] best = filled(81, UNSET);
+        boolean bestTransposed;
+        final int[] bestRowOrder = new int[9];
+        int[] bestColOrder;
+        final int[] bestDigitMap = new int[10];
+
+        private static int[] filled(int n, int val) {
+            int[] array = new int[n];
+            Arrays.fill(array, val);
+            return array;
+        }
+
+        void setSource(int[] cells, boolean transposed) {
+            System.arraycopy(cells, 0, source, 0, 81);
+            this.transposed = transposed;
+            rowIds = lineIds(source, false);
+
+            int[][] sortedIds = new int[3][];
+            for (int band = 0; band < 3; band++) {
+                sortedIds[band] = Arrays.copyOfRange(rowIds, 3 * band, 3 * band + 3);
+                Arrays.sort(sortedIds[band]);
+                bandIds[band] = band;
+                for (int other = 0; other < band; other++) {
+                    if(Arrays.equals(sortedIds[band], sortedIds[other])) {
+                        bandIds[band] = other;
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Tries each row in the mask as the first row
+         */
+        void searchFirstRows(int rows) {
+            for (; rows != 0; rows &= rows - 1) {
+                int row = Integer.numberOfTrailingZeros(rows);
+                if(!isRedundant(row, 0))
+                    tryRow(0, row);
+            }
+        }
+
+        /**
+         * Tries each row allowed at this depth: any row of an unused band at the start of a band,
+         * otherwise an unused row of the current band.
+         */
+        void searchRows(int level) {
+            if(level == 9) {
+                bestTransposed = transposed;
+                System.arraycopy(rowOrder, 0, bestRowOrder, 0, 9);
+                bestColOrder = colOrder;
+                System.arraycopy(digitMaps[9], 0, bestDigitMap, 0, 10);
+                return;
+            }
+
+            int firstBand, lastBand;
+            if(level % 3 == 0) {
+                firstBand = 0;
+                lastBand = 2;
+            } else {
+                firstBand = lastBand = rowOrder[level - 1] / 3;
+            }
+            for (int band = firstBand; band <= lastBand; band++) {
+                for (int row = 3 * band; row < 3 * band + 3; row++) {
+                    if(!isUsed(row, level) && !isRedundant(row, level))
+                        tryRow(level, row);
+                }
+            }
+        }
+
+        /**
+         * Returns true if the row was chosen above this depth; a used band has all its rows used
+         */
+        private boolean isUsed(int row, int level) {
+            for (int i = 0; i < level; i++) {
+                if(rowOrder[i] == row)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if trying the unused row at this depth repeats a search already made: an earlier unused
+         * row of its band has the same cells, or this starts a band and an earlier unused band has the same rows
+         */
+        private boolean isRedundant(int row, int level) {
+            int band = row / 3;
+            for (int other = 3 * band; other < row; other++) {
+                if(rowIds[other] == rowIds[row] && !isUsed(other, level))
+                    return true;
+            }
+            if(level % 3 == 0) {
+                for (int other = 0; other < band; other++) {
+                    if(bandIds[other] == bandIds[band] && !isUsed(3 * other, level))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Lays out the row at this depth, relabeling digits it shows for the first time, and searches
+         * deeper unless it compares greater than the best grid's row.
+         */
+        private void tryRow(int level, int row) {
+            int[] map = digitMaps[level + 1];
+            System.arraycopy(digitMaps[level], 0, map, 0, 10);
+            int label = nextLabel[level];
+
+            int cmp = 0;
+            for (int col = 0; col < 9; col++) {
+                int val = source[9 * row + colOrder[col]];
+                if(val != 0) {
+                    if(map[val] == 0)
+                        map[val] = ++label;
+                    val = map[val];
+                }
+                rowCells[col] = val;
+                if(cmp == 0) {
+                    cmp = Integer.compare(val, best[9 * level + col]);
+                    if(cmp > 0)
+                        return;
+                }
+            }
+            nextLabel[level + 1] = label;
+
+            // A smaller row makes this branch the new best: every row below it only has to beat UNSET
+            if(cmp < 0) {
+                System.arraycopy(rowCells, 0, best, 9 * level, 9);
+                Arrays.fill(best, 9 * (level + 1), 81, UNSET);
+            }
+            rowOrder[level] = row;
+            searchRows(level + 1);
+        }
+    }
+
+    /**
+     * A canonical puzzle and the transform mapping the original puzzle onto it
+     */
+    public static final class CanonicalForm {
+        private final String puzzle;
+        private final Transform transform;
+
+        CanonicalForm(String puzzle, Transform transform) {
+            this.puzzle = puzzle;
+            this.transform = transform;
+        }
+
+        /**
+         * Returns the canonical puzzle as 81 characters, '0' for empty cells
+         */
+        public String getPuzzle() {
+            return puzzle;
+        }
+
+        public Transform getTransform() {
+            return transform;
+        }
+
+        @Override
+        public String toString() {
+            return puzzle;
+        }
+    }
+
+    /**
+     * An immutable symmetry of the grid: optionally transpose, then reorder rows and columns, then relabel digits.
+     * apply maps grids of the original puzzle (e.g. its solution) to the canonical puzzle's space,
+     * and revert maps them back.
+     */
+    public static final class Transform {
+        private final boolean transposed;
+        private final int[] rowOrder;
+        private final int[] colOrder;
+        // digitMap[d] is the label of original digit d; inverseMap undoes it. Index 0 (empty) maps to 0.
+        private final int[] digitMap;
+        private final int[] inverseMap;
+
+        Transform(boolean transposed, int[] rowOrder, int[] colOrder, int[] partialDigitMap) {
+            this.transposed = transposed;
+            this.rowOrder = rowOrder.clone();
+            this.colOrder = colOrder.clone();
+            this.digitMap = partialDigitMap.clone();
+
+            // Digits missing from the puzzle take the unused labels in order, so the map is one to one
+            int usedLabels = 0;
+            for (int d = 1; d <= 9; d++) {
+                if(digitMap[d] != 0)
+                    usedLabels |= 1 << digitMap[d];
+            }
+            for (int d = 1; d <= 9; d++) {
+                if(digitMap[d] == 0) {
+                    int label = Integer.numberOfTrailingZeros(~usedLabels & Topology.STANDARD.getAllValues());
+                    digitMap[d] = label;
+                    usedLabels |= 1 << label;
+                }
+            }
+            this.inverseMap = new int[10];
+            for (int d = 1; d <= 9; d++) {
+                inverseMap[digitMap[d]] = d;
+            }
+        }
+
+        /**
+         * Maps an 81 character grid of the original puzzle to the canonical puzzle's space.
+         * Empty cells may be '0' or '.', and are kept as they are.
+         */
+        public String apply(CharSequence grid) {
+            char[] out = new char[81];
+            for (int row = 0; row < 9; row++) {
+                for (int col = 0; col < 9; col++) {
+                    out[9 * row + col] = relabel(grid.charAt(sourceIndex(row, col)), digitMap);
+                }
+            }
+            return new String(out);
+        }
+
+        /**
+         * Maps an 81 character grid in the canonical puzzle's space (e.g. the canonical puzzle's solution)
+         * back to the original puzzle's space. Empty cells may be '0' or '.', and are kept as they are.
+         */
+        public String revert(CharSequence grid) {
+            char[] out = new char[81];
+            for (int row = 0; row < 9; row++) {
+                for (int col = 0; col < 9; col++) {
+                    out[sourceIndex(row, col)] = relabel(grid.charAt(9 * row + col), inverseMap);
+                }
+            }
+            return new String(out);
+        }
+
+        /**
+         * Returns the index in the original grid of the cell that lands at row, col of the canonical grid
+         */
+        private int sourceIndex(int row, int col) {
+            return transposed ? 9 * colOrder[col] + rowOrder[row] : 9 * rowOrder[row] + colOrder[col];
+        }
+
+        private static char relabel(char c, int[] map) {
+            return c >= '1' && c <= '9' ? (char) ('0' + map[c - '0']) : c;
+        }
+
+        public boolean isTransposed() {
+            return transposed;
+        }
+
+        /**
+         * Returns, for each row of the canonical grid, the row of the (transposed, if isTransposed) original
+         */
+        public int[] getRowOrder() {
+            return rowOrder.clone();
+        }
+
+        /**
+         * Returns, for each column of the canonical grid, the column of the (transposed, if isTransposed) original
+         */
+        public int[] getColOrder() {
+            return colOrder.clone();
+        }
+
+        /**
+         * Returns the label of each original digit, indexed 1-9
+         */
+        public int[] getDigitMap() {
+            return digitMap.clone();
+        }
+    }
+}
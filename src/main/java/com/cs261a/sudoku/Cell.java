@@ -1,35 +1,29 @@
 package com.cs261a.sudoku;
 
-import java.util.BitSet;
-
 /**
  * @author Garrett Johnston
  * @date 05/25/15
- * Cell class holds the state of a single cell in a Sudoku grid.
- * The x, y coordinates in the grid, its value (if determined) and its possible values.
+ * Cell class is a thin view onto a single cell of a Sudoku grid.
+ * It knows its x, y coordinates; the value (if determined) and possible values live in the owning Grid,
+ * packed as primitive values and candidate masks (bit v set if v is still possible).
  */
 public class Cell {
+    private final Grid grid;
     private final int x;
     private final int y;
-    private int value;
-    private BitSet possibleValues = new BitSet(10);
+    private final int index;
 
     /**
-     * Constructor creating a cell at given x, y position with given value.
-     * If value = 0, then it is an empty cell, so we set the possible values all to true initially.
-     * @param x - x coordinate in grid (0-8), starting in upper left
-     * @param y - y coordinate in grid (0-8), starting in upper left
-     * @param value - if 0, the cell is undecided. If between 1-9, it is decided.
+     * Constructor creating a view of the cell at given x, y position in the given grid.
+     * @param grid - the grid holding this cell's value and possible values
+     * @param x - x coordinate in grid (0-8 on a 9x9 grid), starting in upper left
+     * @param y - y coordinate in grid (0-8 on a 9x9 grid), starting in upper left
      */
-    public Cell(int x, int y, int value) {
+    public Cell(Grid grid, int x, int y) {
+        this.grid = grid;
         this.x = x;
         this.y = y;
-        this.value = value;
-
-        // If cell not determined, set all possible values (1-9) to true.
-        if(value == 0) {
-            possibleValues.set(1,10);
-        }
+        this.index = grid.getSize()*x + y;
     }
 
     public int getX() {
@@ -44,50 +38,61 @@ public class Cell {
 
     public int getColNum() { return y; }
 
-    public int getBlockNum() { return x - x%3 + y/3; }
+    public int getBlockNum() { return grid.getTopology().getBlockOf()[index]; }
+
+    /**
+     * Position of this cell in the grid's flat arrays (0-80 on a 9x9 grid), row major.
+     */
+    public int getIndex() { return index; }
 
     public int getValue() {
-        return value;
+        return grid.getValue(index);
     }
 
-    protected void setValue(int val) { this.value = val; }
+    protected void setValue(int val) { grid.setValue(index, val); }
 
-    public BitSet getBits() {
-        return possibleValues;
+    /**
+     * Returns the possible values of this cell as a mask, bit v set if v is still possible.
+     */
+    public int getMask() {
+        return grid.getCandidates(index);
     }
 
     public void addPossibleValue(int val) {
-        possibleValues.set(val);
+        grid.addCandidate(index, val);
     }
 
     public void removePossibleVal(int val) {
-        possibleValues.clear(val);
+        grid.removeCandidate(index, val);
     }
 
-    public void clearAllPossibleValues() { possibleValues.clear(); }
+    public void clearAllPossibleValues() { grid.clearCandidates(index); }
 
-    public int getNumPossibleValues() { return possibleValues.cardinality(); }
+    public int getNumPossibleValues() { return Integer.bitCount(getMask()); }
 
-    public int getOnlyPossibleValue() { return possibleValues.nextSetBit(1); }
+    public int getOnlyPossibleValue() {
+        int mask = getMask();
+        return mask == 0 ? -1 : Integer.numberOfTrailingZeros(mask);
+    }
 
     /**
      * Checks if a certain number is a potential value in this cell
      */
     public boolean isPotentialValue(int val) {
-        return possibleValues.get(val);
+        return (getMask() & (1 << val)) != 0;
     }
 
     /**
      * Checks if a value is bound to this cell
      */
     public boolean isDetermined() {
-        return value != 0;
+        return getValue() != 0;
     }
 
 
     @Override
     public String toString() {
-        return String.format("x = %d, y = %d, value = %d, bitset = %s", x, y, value, possibleValues.toString());
+        return String.format("x = %d, y = %d, value = %c, bitset = %s", x, y, Grid.valueToChar(getValue()), Grid.maskToString(getMask()));
     }
 
 }
@@ -1,56 +1,279 @@
 package com.cs261a.sudoku;
 
 import java.io.PrintStream;
-import java.util.BitSet;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Garrett on 5/25/2015.
  */
 public class Grid {
+    // Shape of the grid: its size, and the cells of each row, column, and block
+    private final Topology topology;
+    private final int size;
+
+    // The topology's tables used on every update, held here to save a load per access
+    private final int[][] unitsOf;
+    private final int[][] units;
+    private final int[][] peers;
+
     private int numUndetermined = 0;
-    private byte[][] numUndeterminedInRegion = new byte[3][9];
-    private Cell [][] rows = new Cell[9][9];
-    private Cell [][] cols = new Cell[9][9];
-    private Cell [][] blks = new Cell[9][9];
+    // For each of the 3*size regions (see Topology for numbering), how many of its cells are undetermined
+    private final byte[] numUndeterminedInRegion;
+
+    // Value of each cell (0 if undetermined) and its possible values as a mask, indexed size*row + col
+    private final int[] values;
+    private final int[] candidates;
+
+    // For each region and each value, how many cells in the region still have that value as a possible value
+    private final byte[][] numCandidatesInRegion;
+
+    // For each region, a mask of the values possible in exactly one of its cells
+    private final int[] singleCandidateVals;
+
+    // For each region, a mask of the values determined in it
+    private final int[] placedVals;
+
+    // Number of times a value was determined in a region that already held it. The grid is valid while this is 0.
+    private int numConflicts = 0;
+
+    // Cell views onto the arrays above, by index, and by rows, columns, and blocks
+    private final Cell[] cells;
+    private Cell [][] rows;
+    private Cell [][] cols;
+    private Cell [][] blks;
 
     /**
      * Constructor takes a 2D array of integers and converts it into cells on a Sudoku board.
      * Makes 3 different representations of cells, by rows, columds, and blocks.
-     * @param board - 9x9 array of numbers on a initial Sudoku puzzle
+     * @param board - 9x9, 16x16 or 25x25 (or 4x4) array of numbers on a initial Sudoku puzzle
      */
     public Grid(int[][] board) {
-        if(board.length != 9) { throw new IllegalArgumentException("Error: Incorrect board size"); }
-
-        for(int i = 0; i < 9; i++) {
-            for(int j = 0; j < 9; j++) {
-                rows[i][j] = new Cell(i, j, board[i][j]);
-                cols[j][i] = rows[i][j];
+        this(Topology.forSize(board.length));
+
+        for(int i = 0; i < size; i++) {
+            if(board[i].length != size) { throw new IllegalArgumentException("Error: Incorrect board size"); }
+            for(int j = 0; j < size; j++) {
+                int value = board[i][j];
+                if(value < 0 || value > size)
+                    throw new IllegalArgumentException("Error: Invalid value " + value + " at row " + i + ", column " + j);
+                setupCell(i, j, value);
+            }
+        }
 
-                int blockNum = i - i%3 + j/3;
-                blks[blockNum][3*(i%3) + j%3] = rows[i][j];
+        initCandidateCounts();
+        eliminateInitialPossibleValues();
+    }
 
-                if(board[i][j] == 0) {
-                    numUndetermined++;
-                    numUndeterminedInRegion[Region.ROW.ordinal()][i]++;
-                    numUndeterminedInRegion[Region.COLUMN.ordinal()][j]++;
-                    numUndeterminedInRegion[Region.BLOCK.ordinal()][blockNum]++;
+    /**
+     * Constructor reading the cells of a puzzle straight from a buffer, row by row, one ASCII byte per cell.
+     */
+    private Grid(ByteBuffer buffer, int offset, Topology topology) {
+        this(topology);
+
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                byte b = buffer.get(offset + size*i + j);
+                int value = charToValue(b);
+                if(value < 0 || value > size) {
+                    throw new IllegalArgumentException("Error: Invalid byte " + b + " for cell " + (size*i + j)
+                                                       + " of puzzle at offset " + offset);
                 }
+                setupCell(i, j, value);
             }
         }
 
+        initCandidateCounts();
         eliminateInitialPossibleValues();
     }
 
+    /**
+     * Allocates the state of a grid of the given shape, without setting up any cells
+     */
+    private Grid(Topology topology) {
+        this.topology = topology;
+        this.size = topology.getSize();
+        this.unitsOf = topology.getUnitsOf();
+        this.units = topology.getUnits();
+        this.peers = topology.getPeers();
+        int numUnits = topology.getNumUnits();
+        numUndeterminedInRegion = new byte[numUnits];
+        values = new int[topology.getNumCells()];
+        candidates = new int[topology.getNumCells()];
+        cells = new Cell[topology.getNumCells()];
+        numCandidatesInRegion = new byte[numUnits][size + 1];
+        singleCandidateVals = new int[numUnits];
+        placedVals = new int[numUnits];
+        rows = new Cell[size][size];
+        cols = new Cell[size][size];
+        blks = new Cell[size][size];
+    }
+
+    /**
+     * Creates a grid of the given shape with every cell undetermined
+     */
+    public static Grid empty(Topology topology) {
+        return new Grid(new int[topology.getSize()][topology.getSize()]);
+    }
+
+    /**
+     * Creates a 9x9 grid from 81 bytes of a buffer starting at offset, with '1'-'9' for determined cells
+     * and '0' or '.' for empty ones. Reads with absolute gets, so the buffer's position is untouched.
+     */
+    public static Grid fromBytes(ByteBuffer buffer, int offset) {
+        return new Grid(buffer, offset, Topology.STANDARD);
+    }
+
+    /**
+     * Creates a grid of the given shape from its size*size bytes in a buffer starting at offset,
+     * one character per cell as in charToValue.
+     */
+    public static Grid fromBytes(ByteBuffer buffer, int offset, Topology topology) {
+        return new Grid(buffer, offset, topology);
+    }
+
+    /**
+     * Returns the value of a puzzle character: 0 for '.' or '0', 1-9 for '1'-'9', and 10 and up for 'A' (or 'a')
+     * and up, so 16x16 grids use '1'-'9' and 'A'-'G', and 25x25 grids '1'-'9' and 'A'-'P'.
+     * Returns -1 for any other character.
+     */
+    public static int charToValue(int c) {
+        if(c == '.' || c == '0')
+            return 0;
+        if(c >= '1' && c <= '9')
+            return c - '0';
+        if(c >= 'A' && c <= 'Z')
+            return c - 'A' + 10;
+        if(c >= 'a' && c <= 'z')
+            return c - 'a' + 10;
+        return -1;
+    }
+
+    /**
+     * Returns the puzzle character of a value, as in charToValue, with '.' for 0
+     */
+    public static char valueToChar(int value) {
+        if(value == 0)
+            return '.';
+        return value <= 9 ? (char) ('0' + value) : (char) ('A' + value - 10);
+    }
+
+    /**
+     * Sets the value of the cell at row i, column j, and builds its cell view.
+     */
+    private void setupCell(int i, int j, int value) {
+        int index = size*i + j;
+        values[index] = value;
+        // If cell not determined, set all possible values (1 to size) to true.
+        candidates[index] = value == 0 ? topology.getAllValues() : 0;
+        rows[i][j] = new Cell(this, i, j);
+        cells[index] = rows[i][j];
+        cols[j][i] = rows[i][j];
+
+        int boxSize = topology.getBoxSize();
+        int blockNum = i - i%boxSize + j/boxSize;
+        blks[blockNum][boxSize*(i%boxSize) + j%boxSize] = rows[i][j];
+
+        if(value != 0) {
+            placeVal(index, value);
+        } else {
+            countUndetermined(index, 1);
+        }
+    }
+
+    /**
+     * Adds delta to the number of undetermined cells, overall and in the row, column, and block of the cell at index
+     */
+    private void countUndetermined(int index, int delta) {
+        int[] units = unitsOf[index];
+        numUndetermined += delta;
+        numUndeterminedInRegion[units[0]] += delta;
+        numUndeterminedInRegion[units[1]] += delta;
+        numUndeterminedInRegion[units[2]] += delta;
+    }
+
+    /**
+     * Before any possible values are eliminated, each value is possible in every undetermined cell of a region.
+     */
+    private void initCandidateCounts() {
+        for (int regionIndex = 0; regionIndex < numUndeterminedInRegion.length; regionIndex++) {
+            byte numUndeterminedCells = numUndeterminedInRegion[regionIndex];
+            for (int val = 1; val <= size; val++) {
+                numCandidatesInRegion[regionIndex][val] = numUndeterminedCells;
+            }
+            if(numUndeterminedCells == 1)
+                singleCandidateVals[regionIndex] = topology.getAllValues();
+        }
+    }
+
+    /**
+     * Overwrites the value and possible values of the cell at index, without updating any counts.
+     * Callers must call rebuildCounts once all cells are set.
+     */
+    void setRawState(int index, int value, int mask) {
+        values[index] = value;
+        candidates[index] = mask;
+    }
+
+    /**
+     * Recomputes the undetermined cell counts, candidate counts, and conflicts from the cell values
+     * and possible values, e.g. after they were overwritten with setRawState.
+     */
+    void rebuildCounts() {
+        numUndetermined = 0;
+        numConflicts = 0;
+        for (int regionIndex = 0; regionIndex < numUndeterminedInRegion.length; regionIndex++) {
+            numUndeterminedInRegion[regionIndex] = 0;
+            for (int val = 1; val <= size; val++) {
+                numCandidatesInRegion[regionIndex][val] = 0;
+            }
+            singleCandidateVals[regionIndex] = 0;
+            placedVals[regionIndex] = 0;
+        }
+
+        for (int index = 0; index < values.length; index++) {
+            if(values[index] != 0) {
+                placeVal(index, values[index]);
+            } else {
+                countUndetermined(index, 1);
+            }
+            for (int mask = candidates[index]; mask != 0; mask &= mask - 1) {
+                adjustCandidateCounts(index, Integer.numberOfTrailingZeros(mask), 1);
+            }
+        }
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns the number of rows, columns, blocks and values, e.g. 9
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumCells() {
+        return values.length;
+    }
+
+    /**
+     * Returns the mask with bits 1 to getSize() set, i.e. every value still possible
+     */
+    public int getAllValues() {
+        return topology.getAllValues();
+    }
+
     public int getNumUndetermined() {
         return numUndetermined;
     }
 
     public int getNumDetermined() {
-        return 81 - numUndetermined;
+        return values.length - numUndetermined;
     }
 
     public int getNumUndeterminedInRegion(Region region, int regionNum) {
-        return numUndeterminedInRegion[region.ordinal()][regionNum];
+        return numUndeterminedInRegion[topology.unitIndex(region, regionNum)];
     }
 
     public Cell[] getRow(int i) {
@@ -82,50 +305,151 @@ public class Grid {
         return getRegion(region, regionNum)[index];
     }
 
+    /**
+     * Returns the cell at the given position in the flat, row major ordering (0 to size*size-1)
+     */
+    public Cell getCell(int index) {
+        return cells[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    void setValue(int index, int val) {
+        values[index] = val;
+    }
+
+    /**
+     * Returns the possible values of the cell at index as a mask, bit v set if v is still possible.
+     */
+    public int getCandidates(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Returns the live array of candidate masks, for scanners that read all of them at once. Must not be modified.
+     */
+    int[] candidateArray() {
+        return candidates;
+    }
+
+    void addCandidate(int index, int val) {
+        int bit = 1 << val;
+        if((candidates[index] & bit) == 0) {
+            candidates[index] |= bit;
+            adjustCandidateCounts(index, val, 1);
+        }
+    }
+
+    void removeCandidate(int index, int val) {
+        int bit = 1 << val;
+        if((candidates[index] & bit) != 0) {
+            candidates[index] &= ~bit;
+            adjustCandidateCounts(index, val, -1);
+        }
+    }
+
+    void clearCandidates(int index) {
+        int mask = candidates[index];
+        candidates[index] = 0;
+        while(mask != 0) {
+            adjustCandidateCounts(index, Integer.numberOfTrailingZeros(mask), -1);
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * Removes every value in mask from the possible values of the cell at index
+     */
+    public void removePossibleVals(int index, int mask) {
+        for (mask &= candidates[index]; mask != 0; mask &= mask - 1) {
+            removeCandidate(index, Integer.numberOfTrailingZeros(mask));
+        }
+    }
+
+    /**
+     * Returns how many cells in region[regionNum] still have val as a possible value
+     */
+    public int getNumCandidatesInRegion(Region region, int regionNum, int val) {
+        return numCandidatesInRegion[topology.unitIndex(region, regionNum)][val];
+    }
+
+    /**
+     * Returns how many cells of a unit (numbered as in Topology) still have val as a possible value
+     */
+    public int getNumCandidatesInUnit(int unit, int val) {
+        return numCandidatesInRegion[unit][val];
+    }
+
+    /**
+     * Returns a mask of the values that are possible in exactly one cell of region[regionNum]
+     */
+    public int getSingleCandidateValsInRegion(Region region, int regionNum) {
+        return singleCandidateVals[topology.unitIndex(region, regionNum)];
+    }
+
+    /**
+     * Updates the candidate counts of the row, column, and block containing the cell at index,
+     * after val was added (delta = 1) or removed (delta = -1) as one of its possible values.
+     */
+    private void adjustCandidateCounts(int index, int val, int delta) {
+        int[] units = unitsOf[index];
+        adjustCandidateCount(units[0], val, delta);
+        adjustCandidateCount(units[1], val, delta);
+        adjustCandidateCount(units[2], val, delta);
+    }
+
+    private void adjustCandidateCount(int regionIndex, int val, int delta) {
+        int count = numCandidatesInRegion[regionIndex][val] += delta;
+        if(count == 1)
+            singleCandidateVals[regionIndex] |= 1 << val;
+        else
+            singleCandidateVals[regionIndex] &= ~(1 << val);
+    }
+
     /**
      * Takes the initial grid after setup, and removes possible values causing
      */
     private void eliminateInitialPossibleValues() {
-        removePossibleValsInSameRegionAsDeterminedVals(rows);
-        removePossibleValsInSameRegionAsDeterminedVals(cols);
-        removePossibleValsInSameRegionAsDeterminedVals(blks);
+        for (int index = 0; index < values.length; index++) {
+            if(values[index] != 0)
+                clearValInPeers(index, values[index]);
+        }
     }
 
-    private void removePossibleValsInSameRegionAsDeterminedVals(Cell[][] regions) {
-        for (int i = 0; i < regions.length; i++) {
-            Cell[] region = regions[i];
-            for (Cell cell : region) {
-                if (cell.isDetermined())
-                    clearValInRegion(regions, i, cell.getValue());
-            }
+    /**
+     * Remove a value from the possible values of the cells sharing a row, column, or block with the cell at index
+     */
+    private void clearValInPeers(int index, int val) {
+        for (int peer : peers[index]) {
+            removeCandidate(peer, val);
         }
     }
 
     // For each cell in row[rowNum], remove possibleValue val
     public void clearValInRow(int rowNum, int val) {
-        clearValInRegion(rows, rowNum, val);
+        clearValInRegion(topology.unitIndex(Region.ROW, rowNum), val);
     }
 
     // For each cell in cols[colNum], remove possibleValue val
     public void clearValInCol(int colNum, int val) {
-        clearValInRegion(cols, colNum, val);
+        clearValInRegion(topology.unitIndex(Region.COLUMN, colNum), val);
     }
 
     // For each cell in blks[blockNum], remove possibleValue val
     public void clearValInBlock(int blockNum, int val) {
-        clearValInRegion(blks, blockNum, val);
+        clearValInRegion(topology.unitIndex(Region.BLOCK, blockNum), val);
     }
 
     /**
-     * Remove a value from all possibleValue sets in a given region w/regionNumber
-     * @param regions - either rows, cols, or blks
-     * @param regionNum - which row, col, or block within the region
+     * Remove a value from all possibleValue sets in a given region
+     * @param regionIndex - which of the regions, numbered as in Topology
      * @param val - value to clear from all cells
      */
-    private void clearValInRegion(Cell[][] regions, int regionNum, int val) {
-        for(int i = 0; i < 9; i++) {
-            Cell cell = regions[regionNum][i];
-            cell.removePossibleVal(val);
+    private void clearValInRegion(int regionIndex, int val) {
+        for (int index : units[regionIndex]) {
+            removeCandidate(index, val);
         }
     }
 
@@ -138,9 +462,10 @@ public class Grid {
 
     /**
      * Returns true if the current sudoku grid is valid. False otherwise
+     * Conflicts are counted as cells are determined, so this is constant time.
      */
     public boolean isValid() {
-        return allDifferent(rows) && allDifferent(cols) && allDifferent(blks);
+        return numConflicts == 0;
     }
     /**
      * Returns true if the puzzle is determined and valid. False otherwise
@@ -149,48 +474,46 @@ public class Grid {
         return isDetermined() && isValid();
     }
 
-    /**
-     * Returns true if each array of cells holds distinct values. False if not.
-     */
-    private boolean allDifferent(Cell[][] regions) {
-        BitSet bitset = new BitSet(10);
-        for (Cell[] region : regions) {
-            for(Cell cell : region) {
-                if(cell.isDetermined() && bitset.get(cell.getValue()))
-                    return false;
-                else
-                    bitset.set(cell.getValue());
-            }
-            bitset.clear();
-        }
-        return true;
-    }
-
     public void determineCell(Cell cell, int val) {
         // Make sure cell is currently undetermined
         if(cell.getValue() != 0)
             throw new RuntimeException("ERROR: Determining cell: " + cell.toString() + " that is already determined");
 
-        cell.setValue(val);
-        cell.clearAllPossibleValues();
+        int index = cell.getIndex();
+        values[index] = val;
+        clearCandidates(index);
+        placeVal(index, val);
 
         // Update number of undetermined cells left
-        this.numUndetermined--;
-        this.numUndeterminedInRegion[Region.ROW.ordinal()][cell.getRowNum()]--;
-        this.numUndeterminedInRegion[Region.COLUMN.ordinal()][cell.getColNum()]--;
-        this.numUndeterminedInRegion[Region.BLOCK.ordinal()][cell.getBlockNum()]--;
+        countUndetermined(index, -1);
 
         // Remove this value from cells in the same row, column, and block as this cell.
-        clearValInRow(cell.getRowNum(), val);
-        clearValInCol(cell.getColNum(), val);
-        clearValInBlock(cell.getBlockNum(), val);
+        clearValInPeers(index, val);
+    }
+
+    /**
+     * Records val as determined in the row, column, and block of the cell at index, counting a conflict
+     * for each of those regions that already held it.
+     */
+    private void placeVal(int index, int val) {
+        int[] units = unitsOf[index];
+        placeValInRegion(units[0], val);
+        placeValInRegion(units[1], val);
+        placeValInRegion(units[2], val);
+    }
+
+    private void placeValInRegion(int regionIndex, int val) {
+        int bit = 1 << val;
+        if((placedVals[regionIndex] & bit) != 0)
+            numConflicts++;
+        placedVals[regionIndex] |= bit;
     }
 
     /**
      * Returns an array of the undetermined cells in a given region[regionNum]
      */
     public Cell[] undeterminedCellsInRegion(Region region, int regionNum){
-        int numUndeterminedCells = this.numUndeterminedInRegion[region.ordinal()][regionNum];
+        int numUndeterminedCells = this.numUndeterminedInRegion[topology.unitIndex(region, regionNum)];
         if(numUndeterminedCells == 0)
                 return null;
 
@@ -206,28 +529,85 @@ public class Grid {
         return undeterminedCells;
     }
 
-    public BitSet getDeterminedValsInRegion(Region region, int regionNum) {
-        return getDeterminedValsInRegion(getRegion(region, regionNum));
+    /**
+     * Returns the first undetermined cell in a given region[regionNum], or null if all are determined
+     */
+    public Cell firstUndeterminedCellInRegion(Region region, int regionNum) {
+        for (int index : units[topology.unitIndex(region, regionNum)]) {
+            if(values[index] == 0)
+                return getCell(index);
+        }
+        return null;
     }
 
-    public static BitSet getDeterminedValsInRegion(Cell[] region) {
-        BitSet bitSet = new BitSet(10);
+    /**
+     * Returns a mask of the values already determined in region[regionNum], bit v set if v is placed.
+     */
+    public int getDeterminedValsInRegion(Region region, int regionNum) {
+        return placedVals[topology.unitIndex(region, regionNum)];
+    }
+
+    public static int getDeterminedValsInRegion(Cell[] region) {
+        int mask = 0;
         for(Cell cell : region) {
-            if(cell.isDetermined())
-                bitSet.set(cell.getValue());
+            // An undetermined cell sets bit 0, which is masked off below
+            mask |= 1 << cell.getValue();
+        }
+        return mask & ~1;
+    }
+
+    /**
+     * Formats a mask of values as a set, with values as in valueToChar, e.g. {1, 4, 9} or {3, A, G}
+     */
+    public static String maskToString(int mask) {
+        StringBuilder str = new StringBuilder("{");
+        for (int val = 1; val < 32; val++) {
+            if ((mask & (1 << val)) != 0) {
+                if (str.length() > 1)
+                    str.append(", ");
+                str.append(valueToChar(val));
+            }
+        }
+        return str.append("}").toString();
+    }
+
+    /**
+     * Returns the board as a single line of size*size characters (81 for 9x9), row by row,
+     * with '.' for undetermined cells and values as in valueToChar
+     */
+    public String toPuzzleString() {
+        char[] line = new char[values.length];
+        for (int i = 0; i < values.length; i++) {
+            line[i] = valueToChar(values[i]);
+        }
+        return new String(line);
+    }
+
+    /**
+     * Writes the board as size*size ASCII bytes into dest starting at offset, with '.' for undetermined cells
+     */
+    public void toPuzzleBytes(byte[] dest, int offset) {
+        for (int i = 0; i < values.length; i++) {
+            dest[offset + i] = (byte) valueToChar(values[i]);
         }
-        return bitSet;
     }
 
     /**
      * Print the Sudoku board with only determined cells displayed
      */
     public void printCurrentState() {
+        printCurrentState(System.out);
+    }
+
+    /**
+     * Print the Sudoku board with only determined cells displayed, to designated print stream
+     */
+    public void printCurrentState(PrintStream printStream) {
         for(Cell [] row : rows) {
             for (Cell cell : row) {
-                System.out.print(cell.getValue() + " ");
+                printStream.print(cell.getValue() + " ");
             }
-            System.out.print("\n");
+            printStream.print("\n");
         }
     }
 
@@ -239,67 +619,53 @@ public class Grid {
     }
 
     /**
-     * Print the current Sudoku board to designated print stream, including all possible values for undetermined cells
+     * Print the current Sudoku board to designated print stream, including all possible values for undetermined cells.
+     * Each cell takes boxSize lines of boxSize characters, holding its possible values or, in the middle, its value.
      */
     public void printVerboseState(PrintStream printStream) {
-        System.setOut(printStream);
-        System.out.println("Undetermined cells: " + numUndetermined);
-        for (int rowNum = 0; rowNum < rows.length; rowNum++) {
+        printStream.println("Undetermined cells: " + numUndetermined);
+        int boxSize = topology.getBoxSize();
+        StringBuilder[] lines = new StringBuilder[boxSize];
+        for (int rowNum = 0; rowNum < size; rowNum++) {
             Cell[] row = rows[rowNum];
-            StringBuilder line1 = new StringBuilder("[");
-            StringBuilder line2 = new StringBuilder("[");
-            StringBuilder line3 = new StringBuilder("[");
-            for (int colNum = 0; colNum < rows.length; colNum++) {
+            for (int line = 0; line < boxSize; line++) {
+                lines[line] = new StringBuilder("[");
+            }
+            for (int colNum = 0; colNum < size; colNum++) {
                 Cell cell = row[colNum];
-                for (int i = 1; i <= 3; i++) {
-                    if (cell.isPotentialValue(i)) {
-                        line1.append(i);
-                    } else {
-                        line1.append(" ");
-                    }
-                }
-                for (int i = 4; i <= 6; i++) {
-                    if (cell.isPotentialValue(i)) {
-                        line2.append(i);
-                    } else if(cell.isDetermined()) {
-                        line2.append(" ").append(cell.getValue()).append(" ");
-                        break;
-                    } else {
-                        line2.append(" ");
+                for (int line = 0; line < boxSize; line++) {
+                    for (int i = 0; i < boxSize; i++) {
+                        int val = boxSize*line + i + 1;
+                        if (cell.isPotentialValue(val)) {
+                            lines[line].append(valueToChar(val));
+                        } else if (cell.isDetermined() && line == boxSize / 2 && i == (boxSize - 1) / 2) {
+                            lines[line].append(valueToChar(cell.getValue()));
+                        } else {
+                            lines[line].append(" ");
+                        }
                     }
-                }
-                for (int i = 7; i <= 9; i++) {
-                    if (cell.isPotentialValue(i)) {
-                        line3.append(i);
+
+                    if (colNum == size - 1) {
+                        lines[line].append("]");
+                    } else if (colNum % boxSize == boxSize - 1) {
+                        lines[line].append("] [");
                     } else {
-                        line3.append(" ");
+                        lines[line].append("|");
                     }
                 }
-
-                if (colNum == 2 || colNum == 5) {
-                    line1.append("] [");
-                    line2.append("] [");
-                    line3.append("] [");
-                } else if (colNum != 8) {
-                    line1.append("|");
-                    line2.append("|");
-                    line3.append("|");
-                } else if (colNum == 8) {
-                    line1.append("]");
-                    line2.append("]");
-                    line3.append("]");
-                }
             }
 
-            System.out.println(line1.toString());
-            System.out.println(line2.toString());
-            System.out.println(line3.toString());
-            if (rowNum == 2 || rowNum == 5) {
-                System.out.println("=========================================");
-            } else if (rowNum != 8) {
-                System.out.println("-----------------------------------------");
+            for (StringBuilder line : lines) {
+                printStream.println(line.toString());
+            }
+            if (rowNum != size - 1) {
+                char separator = rowNum % boxSize == boxSize - 1 ? '=' : '-';
+                StringBuilder border = new StringBuilder();
+                for (int i = 0; i < lines[0].length(); i++) {
+                    border.append(separator);
+                }
+                printStream.println(border.toString());
             }
-
         }
     }
 
@@ -0,0 +1,95 @@
+package com.cs261a.sudoku;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary form of a Grid's full state, for caching grids and handing them between processes.
+ * Each cell of a grid of size n takes n+1 bits: a determined cell is a 1 flag bit and its value, an
+ * undetermined cell is a 0 flag bit and its n possible values. The 81 cells of a 9x9 grid pack into
+ * ENCODED_LENGTH (102) bytes, least significant bit first; other sizes take getEncodedLength bytes.
+ * The size itself is not encoded, so the reader must know it. Encoding and decoding into an existing
+ * grid allocate nothing.
+ */
+public class GridCodec {
+
+    public static final int ENCODED_LENGTH = getEncodedLength(Topology.STANDARD);
+
+    /**
+     * Returns the number of bytes a grid of the given shape encodes to
+     */
+    public static int getEncodedLength(Topology topology) {
+        return (topology.getNumCells() * (topology.getSize() + 1) + 7) / 8;
+    }
+
+    /**
+     * Writes the grid's state at the buffer's position, advancing it by getEncodedLength bytes
+     */
+    public static void encode(Grid grid, ByteBuffer buffer) {
+        int bitsPerCell = grid.getSize() + 1;
+        int determinedFlag = 1 << grid.getSize();
+        long bits = 0;
+        int numBits = 0;
+        for (int index = 0; index < grid.getNumCells(); index++) {
+            int value = grid.getValue(index);
+            int code = value != 0 ? determinedFlag | value : grid.getCandidates(index) >>> 1;
+            bits |= (long) code << numBits;
+            numBits += bitsPerCell;
+            while(numBits >= 8) {
+                buffer.put((byte) bits);
+                bits >>>= 8;
+                numBits -= 8;
+            }
+        }
+        if(numBits > 0)
+            buffer.put((byte) bits);
+    }
+
+    /**
+     * Reads a 9x9 grid's state from the buffer's position into a new grid, advancing it by ENCODED_LENGTH bytes
+     */
+    public static Grid decode(ByteBuffer buffer) {
+        return decode(buffer, Topology.STANDARD);
+    }
+
+    /**
+     * Reads the state of a grid of the given shape from the buffer's position into a new grid,
+     * advancing it by getEncodedLength bytes
+     */
+    public static Grid decode(ByteBuffer buffer, Topology topology) {
+        Grid grid = Grid.empty(topology);
+        decode(buffer, grid);
+        return grid;
+    }
+
+    /**
+     * Reads a grid's state from the buffer's position into an existing grid of the same size, overwriting all
+     * of its state. Advances the buffer by getEncodedLength bytes.
+     * @throws IllegalArgumentException if a determined cell holds a value outside 1 to the grid's size
+     */
+    public static void decode(ByteBuffer buffer, Grid grid) {
+        int size = grid.getSize();
+        int bitsPerCell = size + 1;
+        int determinedFlag = 1 << size;
+        long bits = 0;
+        int numBits = 0;
+        for (int index = 0; index < grid.getNumCells(); index++) {
+            while(numBits < bitsPerCell) {
+                bits |= (long) (buffer.get() & 0xFF) << numBits;
+                numBits += 8;
+            }
+            int code = (int) (bits & ((1L << bitsPerCell) - 1));
+            bits >>>= bitsPerCell;
+            numBits -= bitsPerCell;
+
+            if((code & determinedFlag) != 0) {
+                int value = code & (determinedFlag - 1);
+                if(value < 1 || value > size)
+                    throw new IllegalArgumentException("Error: Invalid value " + value + " for cell " + index);
+                grid.setRawState(index, value, 0);
+            } else {
+                grid.setRawState(index, 0, (code << 1) & grid.getAllValues());
+            }
+        }
+        grid.rebuildCounts();
+    }
+}
@@ -0,0 +1,159 @@
+package com.cs261a.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads corpus files of puzzle lines by memory mapping them, so puzzles are parsed straight
+ * from the mapped bytes into Grids without creating Strings or int[][] boards.
+ * Each line should be 81 ASCII bytes, '1'-'9' for given cells and '0' or '.' for empty ones, followed by
+ * "\n" or "\r\n". The final line's ending may be left off, and blank lines are skipped.
+ * The file is split into chunks of whole lines, about a number of puzzles each, so parallel workers can each
+ * take a chunk. Lines are found by their endings, so a line of the wrong length is a bad puzzle of its own and
+ * the lines after it are read as usual. Files larger than 2 GB are mapped as several regions.
+ */
+public class MappedPuzzleReader implements Closeable {
+
+    public static final int PUZZLE_LENGTH = 81;
+
+    // Largest region mapped at once
+    private static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+
+    public MappedPuzzleReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /**
+     * Maps the whole file and splits it into chunks of about puzzlesPerChunk lines (assuming lines of 81 bytes
+     * and a newline), in file order. Chunks stay readable after this reader is closed.
+     */
+    public List<Chunk> chunks(int puzzlesPerChunk) throws IOException {
+        long chunkBytes = (long) puzzlesPerChunk * (PUZZLE_LENGTH + 1);
+        if(chunkBytes > MAX_MAPPING)
+            throw new IllegalArgumentException("Error: Chunks of " + puzzlesPerChunk + " puzzles are too large to map");
+
+        List<Chunk> chunks = new ArrayList<Chunk>((int) (size / chunkBytes + 1));
+        long mappingStart = 0;
+        while(mappingStart < size) {
+            long mappingEnd = Math.min(size, mappingStart + MAX_MAPPING);
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, mappingStart, mappingEnd - mappingStart);
+            int limit = (int) (mappingEnd - mappingStart);
+
+            int start = 0;
+            while(start < limit) {
+                // End the chunk after the line ending at or past its nominal end
+                int end = start + (int) Math.min(chunkBytes, limit - start);
+                while(end < limit && mapping.get(end - 1) != '\n') {
+                    end++;
+                }
+                if(end == limit && mappingEnd < size && mapping.get(end - 1) != '\n') {
+                    // The chunk's last line runs past this mapping, so start the next mapping with it
+                    if(start == 0)
+                        throw new IllegalArgumentException("Error: Line at byte " + mappingStart + " is too long to map");
+                    break;
+                }
+                chunks.add(new Chunk(mapping.duplicate(), start, end, mappingStart));
+                start = end;
+            }
+            mappingStart += start;
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A run of whole lines within a mapped region of the file.
+     * Reading grids only uses absolute gets, so each chunk can be handed to its own worker thread. The lines are
+     * found on first use, so a chunk must only be read by one thread at a time.
+     */
+    public static class Chunk {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final long mappingStart;
+
+        // Offset in the buffer of each non-blank line, and of the byte after its content
+        private int[] lineStarts;
+        private int[] lineEnds;
+        private int numPuzzles = -1;
+
+        Chunk(ByteBuffer buffer, int start, int end, long mappingStart) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.mappingStart = mappingStart;
+        }
+
+        private void findLines() {
+            if(numPuzzles >= 0)
+                return;
+            int capacity = (end - start) / (PUZZLE_LENGTH + 1) + 1;
+            lineStarts = new int[capacity];
+            lineEnds = new int[capacity];
+            int count = 0;
+            int lineStart = start;
+            while(lineStart < end) {
+                int lineEnd = lineStart;
+                while(lineEnd < end && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if(contentEnd > lineStart) {
+                    if(count == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, 2 * count);
+                        lineEnds = Arrays.copyOf(lineEnds, 2 * count);
+                    }
+                    lineStarts[count] = lineStart;
+                    lineEnds[count] = contentEnd;
+                    count++;
+                }
+                lineStart = lineEnd + 1;
+            }
+            numPuzzles = count;
+        }
+
+        /**
+         * Returns the position in the file of this chunk's first byte
+         */
+        public long getFileOffset() {
+            return mappingStart + start;
+        }
+
+        /**
+         * Returns the number of non-blank lines in this chunk
+         */
+        public int getNumPuzzles() {
+            findLines();
+            return numPuzzles;
+        }
+
+        /**
+         * Parses the i'th non-blank line of this chunk into a new Grid
+         * @throws IllegalArgumentException if the line is not an 81 byte puzzle
+         */
+        public Grid getGrid(int i) {
+            findLines();
+            int lineStart = lineStarts[i];
+            if(lineEnds[i] - lineStart != PUZZLE_LENGTH)
+                throw new IllegalArgumentException("Error: Puzzle at byte " + (mappingStart + lineStart) + " is "
+                                                   + (lineEnds[i] - lineStart) + " bytes long, not " + PUZZLE_LENGTH);
+            return Grid.fromBytes(buffer, lineStart);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cs261a.sudoku;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs tasks on the ForkJoinPools that BatchSolver, Rater, Generator and the other batch classes keep, so
+ * parallel streams inside a task use that pool's worker threads rather than the common pool.
+ */
+public final class Pools {
+
+    private Pools() {
+    }
+
+    /**
+     * Runs the task in the pool and waits for its result.
+     * A RuntimeException thrown by the task is rethrown as it is; anything else is wrapped in one.
+     */
+    public static <T> T invoke(ForkJoinPool pool, Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("ERROR: Interrupted while waiting for a parallel task", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException("ERROR: Parallel task failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cs261a.sudoku;
+
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The outcome of a solve that returns rather than throws (see Solver.solveWithBudget): the grid as far as
+ * the solve got, with its remaining possible values, how the solve ended, and the techniques it used.
+ */
+public final class SolveResult {
+
+    public enum Status {
+        // The grid is complete
+        SOLVED,
+        // No technique applies, and the engine has no other way forward
+        STUCK,
+        // The step or time budget ran out first
+        BUDGET_SPENT,
+        // A technique led to an invalid grid, so the puzzle has no solution
+        INVALID
+    }
+
+    private final Grid grid;
+    private final Status status;
+    private final int numSteps;
+    private final Set<TechniqueType> techniquesUsed;
+
+    public SolveResult(Grid grid, Status status, int numSteps, Set<TechniqueType> techniquesUsed) {
+        this.grid = grid;
+        this.status = status;
+        this.numSteps = numSteps;
+        this.techniquesUsed = techniquesUsed.isEmpty() ? Collections.<TechniqueType>emptySet()
+                                                       : Collections.unmodifiableSet(EnumSet.copyOf(techniquesUsed));
+    }
+
+    /**
+     * Returns the grid, solved in place as far as the solve got
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * Returns the number of technique steps applied
+     */
+    public int getNumSteps() {
+        return numSteps;
+    }
+
+    /**
+     * Returns the techniques applied at least once, in TechniqueType order
+     */
+    public Set<TechniqueType> getTechniquesUsed() {
+        return techniquesUsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s after %d steps, %d cells left, using %s",
+                             status, numSteps, grid.getNumUndetermined(), techniquesUsed);
+    }
+}
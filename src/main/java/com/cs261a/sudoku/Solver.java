@@ -1,55 +1,297 @@
 package com.cs261a.sudoku;
 
+import com.cs261a.sudoku.engine.SolutionCounter;
+import com.cs261a.sudoku.engine.SolvingEngine;
+import com.cs261a.sudoku.engine.TechniqueEngine;
+import com.cs261a.sudoku.metrics.TechniqueMetrics;
+import com.cs261a.sudoku.techniques.Finding;
 import com.cs261a.sudoku.techniques.Technique;
-import com.cs261a.sudoku.techniques.TechniqueFactory;
 import com.cs261a.sudoku.techniques.TechniqueType;
+import com.cs261a.sudoku.trace.PrintStepListener;
+import com.cs261a.sudoku.trace.SilentStepListener;
+import com.cs261a.sudoku.trace.StepListener;
 
-import java.util.ArrayList;
-import java.util.BitSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 /**
  * Created by Garrett on 5/25/2015.
  */
 public class Solver {
 
+    // Splits only the puzzles that take many search nodes, across the common pool
+    private static final SolutionCounter COUNTER = new SolutionCounter();
+
+    // Puzzles waiting in the default async executor's queue before further ones are rejected
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1 << 10;
+
+    private final SolvingEngine engine;
+    private final StepListener listener;
+
+    /**
+     * Creates a solver that uses only the logical techniques, and reports nothing
+     */
+    public Solver() {
+        this(new TechniqueEngine());
+    }
+
+    public Solver(SolvingEngine engine) {
+        this(engine, SilentStepListener.INSTANCE);
+    }
+
+    /**
+     * @param listener - told about every step, and whether each puzzle was solved
+     */
+    public Solver(SolvingEngine engine, StepListener listener) {
+        this.engine = engine;
+        this.listener = listener;
+    }
+
     public void solvePuzzle(int[][] init) throws InsufficientTechniquesException, Technique.BadTechniqueException {
-        Grid grid = new Grid(init);
-        ArrayList<Technique> steps = new ArrayList<Technique>();
-        steps.ensureCapacity(64);
-
-        while(!grid.isComplete()) {
-            TechniqueType techniqueType = TechniqueType.getFirst();
-            Technique technique = TechniqueFactory.getTechnique(techniqueType);
-
-            // Go through techniques in order until we find one we can apply to our current game state.
-            // Throw exception if no techniques can be applied.
-            while(!technique.isApplicable(grid)) {
-                techniqueType = techniqueType.next();
-                if (techniqueType == null) {
-                    throw new InsufficientTechniquesException(grid);
-                } else {
-                    technique = TechniqueFactory.getTechnique(techniqueType);
+        solve(new Grid(init));
+    }
+
+    /**
+     * Solves the grid in place, reporting the steps and result to this solver's listener.
+     * If an exception is thrown, the grid is left in the state the engine reached.
+     * While TechniqueMetrics is enabled, the solve's steps and time are added to its totals.
+     */
+    public void solve(Grid grid) throws InsufficientTechniquesException, Technique.BadTechniqueException {
+        solve(grid, null);
+    }
+
+    /**
+     * Like solve(grid), but gives up as soon as the stop condition returns true (see SolvingEngine)
+     * @param stopCondition - the condition, or null to solve until done
+     * @throws CancellationException if the stop condition ended the solve, leaving the grid as far as it got
+     */
+    public void solve(Grid grid, BooleanSupplier stopCondition)
+            throws InsufficientTechniquesException, Technique.BadTechniqueException {
+        if(!TechniqueMetrics.INSTANCE.isEnabled())
+            solve(grid, listener, stopCondition);
+        else
+            solveCounted(grid, new StepCounter(listener), stopCondition);
+    }
+
+    /**
+     * Applies the engine for at most maxSteps technique steps or maxMicros microseconds, whichever runs out first,
+     * and returns the grid as far as it got, without throwing. Meant for cheap passes such as hints and previews,
+     * which only need the first few deductions.
+     * The budget is checked before each step (or pass, for engines applying every finding of a technique at once,
+     * which may go a few steps over) and during search. Invalid puzzles give an INVALID result rather than an
+     * exception, whether their givens conflict (which the Grid constructor allows) or a contradiction only shows
+     * up while solving.
+     */
+    public SolveResult solveWithBudget(Grid grid, int maxSteps, long maxMicros) {
+        StepCounter counter = new StepCounter(listener);
+        if(!grid.isValid())
+            return new SolveResult(grid, SolveResult.Status.INVALID, 0, counter.techniquesUsed);
+        long maxNanos = TimeUnit.MICROSECONDS.toNanos(maxMicros);
+        long start = System.nanoTime();
+        SolveResult.Status status;
+        try {
+            solveCounted(grid, counter, () -> counter.numSteps >= maxSteps || System.nanoTime() - start >= maxNanos);
+            status = SolveResult.Status.SOLVED;
+        } catch (CancellationException e) {
+            status = SolveResult.Status.BUDGET_SPENT;
+        } catch (InsufficientTechniquesException e) {
+            status = SolveResult.Status.STUCK;
+        } catch (Technique.BadTechniqueException e) {
+            status = SolveResult.Status.INVALID;
+        }
+        return new SolveResult(grid, status, counter.numSteps, counter.techniquesUsed);
+    }
+
+    /**
+     * Solves with the counter as the listener, adding the solve's steps and time to TechniqueMetrics if enabled
+     */
+    private void solveCounted(Grid grid, StepCounter counter, BooleanSupplier stopCondition)
+            throws InsufficientTechniquesException, Technique.BadTechniqueException {
+        TechniqueMetrics metrics = TechniqueMetrics.INSTANCE;
+        if(!metrics.isEnabled()) {
+            solve(grid, counter, stopCondition);
+            return;
+        }
+
+        boolean solved = false;
+        long start = System.nanoTime();
+        try {
+            solve(grid, counter, stopCondition);
+            solved = true;
+        } finally {
+            metrics.recordSolve(solved, counter.numSteps, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts the solutions of the grid, stopping as soon as 'limit' are found; a limit of 2 is enough to tell
+     * whether a puzzle has exactly one. The grid is unchanged.
+     * @return the number of solutions, at most limit
+     * @throws IllegalArgumentException if limit is less than 1
+     */
+    public static int countSolutions(Grid grid, int limit) {
+        return COUNTER.countSolutions(grid, limit);
+    }
+
+    /**
+     * Returns true if the grid has exactly one solution
+     */
+    public static boolean hasUniqueSolution(Grid grid) {
+        return COUNTER.hasUniqueSolution(grid);
+    }
+
+    /**
+     * Solves the puzzle on the default async executor: one thread per available processor, with a queue of
+     * DEFAULT_ASYNC_QUEUE_SIZE puzzles. See solveAsync(puzzle, deadline, executor).
+     */
+    public CompletableFuture<Grid> solveAsync(int[][] puzzle, Instant deadline) {
+        return solveAsync(puzzle, deadline, Async.EXECUTOR);
+    }
+
+    /**
+     * Solves the puzzle on the executor, returning its solved grid through the future.
+     * The future completes by the deadline: with a TimeoutException if the solve hasn't finished by then,
+     * whether it was running or still queued. The solve checks between technique steps and search nodes
+     * whether its future is done, so once it has timed out or been cancelled the thread is soon free again.
+     * If the executor rejects the puzzle (e.g. its queue is full), the future fails at once with the
+     * RejectedExecutionException, so callers under load are told straight away rather than kept waiting.
+     * Other failures (an invalid puzzle, or InsufficientTechniquesException) also complete the future exceptionally.
+     */
+    public CompletableFuture<Grid> solveAsync(int[][] puzzle, Instant deadline, Executor executor) {
+        CompletableFuture<Grid> future = new CompletableFuture<Grid>();
+        long timeoutNanos = Duration.between(Instant.now(), deadline).toNanos();
+        if(timeoutNanos <= 0) {
+            future.completeExceptionally(new TimeoutException("Deadline passed before the solve was submitted"));
+            return future;
+        }
+
+        ScheduledFuture<?> timeout = Async.TIMER.schedule(
+                () -> future.completeExceptionally(new TimeoutException("Solve did not finish by its deadline")),
+                timeoutNanos, TimeUnit.NANOSECONDS);
+        future.whenComplete((grid, e) -> timeout.cancel(false));
+
+        try {
+            executor.execute(() -> {
+                // Skip puzzles cancelled or timed out while queued
+                if(future.isDone())
+                    return;
+                try {
+                    Grid grid = new Grid(puzzle);
+                    solve(grid, () -> future.isDone());
+                    future.complete(grid);
+                } catch (CancellationException e) {
+                    // The future was already completed by cancel or the timeout
+                } catch (Exception | Technique.BadTechniqueException e) {
+                    future.completeExceptionally(e);
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 
-            // Apply the first applicable technique to the game board, adding it to our steps list.
-            technique.apply(grid);
-            steps.add(technique);
+    /**
+     * Returns an executor for solveAsync: numThreads daemon threads taking puzzles from a queue of queueSize,
+     * that rejects puzzles while the queue is full.
+     */
+    public static ThreadPoolExecutor newAsyncExecutor(int numThreads, int queueSize) {
+        return new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.SECONDS,
+                                      new ArrayBlockingQueue<Runnable>(queueSize),
+                                      daemonThreads("sudoku-solver"),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The default async executor and the deadline timer, created on first use
+     */
+    private static class Async {
+        static final ThreadPoolExecutor EXECUTOR =
+                newAsyncExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_ASYNC_QUEUE_SIZE);
+
+        static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+        private static ScheduledThreadPoolExecutor newTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreads("sudoku-solver-deadlines"));
+            // Most solves finish before their deadline, so drop their cancelled timeouts rather than keep them queued
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
         }
-        System.out.println("Puzzle solved!");
-        grid.printCurrentState();
+    }
 
-        for (int i = 0; i < steps.size(); i++) {
-            Technique technique = steps.get(i);
-            System.out.println("step " + i + " technique " + technique.getClass().getSimpleName()
-                                + " " + technique.getNumApplications());
+    private void solve(Grid grid, StepListener listener, BooleanSupplier stopCondition)
+            throws InsufficientTechniquesException, Technique.BadTechniqueException {
+        try {
+            engine.solve(grid, listener, stopCondition);
+        } catch (InsufficientTechniquesException | Technique.BadTechniqueException | CancellationException e) {
+            listener.puzzleUnsolved(grid, e);
+            throw e;
+        }
+        listener.puzzleSolved(grid);
+    }
+
+    /**
+     * Counts the steps of one solve and the techniques they used, passing everything on to the solver's listener
+     */
+    private static class StepCounter implements StepListener {
+        private final StepListener listener;
+        private final Set<TechniqueType> techniquesUsed = EnumSet.noneOf(TechniqueType.class);
+        private int numSteps;
+
+        StepCounter(StepListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stepApplied(Technique technique, Finding finding, Grid grid) {
+            numSteps++;
+            techniquesUsed.add(technique.getType());
+            listener.stepApplied(technique, finding, grid);
+        }
+
+        @Override
+        public void puzzleSolved(Grid grid) {
+            listener.puzzleSolved(grid);
+        }
+
+        @Override
+        public void puzzleUnsolved(Grid grid, Throwable cause) {
+            listener.puzzleUnsolved(grid, cause);
         }
     }
 
-    public class InsufficientTechniquesException extends Exception {
+    public static class InsufficientTechniquesException extends Exception {
+        private final Grid grid;
+
         public InsufficientTechniquesException(Grid grid) {
-            System.err.println("Could not apply any techniques to this game state");
-            grid.printVerboseState(System.err);
+            super("Could not apply any techniques to this game state");
+            this.grid = grid;
+        }
+
+        public Grid getGrid() {
+            return grid;
         }
     }
 
@@ -62,7 +304,7 @@ public class Solver {
         System.out.println("grid is valid:" + grid.isValid());
         grid.printVerboseState();*/
 
-        Solver solver = new Solver();
+        Solver solver = new Solver(new TechniqueEngine(), new PrintStepListener(System.out));
         try {
             solver.solvePuzzle(hard2);
         } catch (InsufficientTechniquesException | Technique.BadTechniqueException e) {
@@ -0,0 +1,259 @@
+package com.cs261a.sudoku;
+
+/**
+ * Precomputed index tables describing the shape of a Sudoku grid, shared by Grid and all techniques.
+ * A grid with box size b has n = b*b rows, columns, blocks and values: 9x9 for b = 3, 16x16 (hexadoku) for
+ * b = 4, and 25x25 for b = 5. Cells are indexed 0 to n*n-1 (n*row + col). Units (regions) are indexed 0 to 3n-1:
+ * rows, then columns, then blocks, i.e. n*region.ordinal() + regionNum.
+ * There is one shared instance per box size, from of(boxSize) or forSize(size); STANDARD is the 9x9 one.
+ */
+public final class Topology {
+
+    public static final int MIN_BOX_SIZE = 2;
+    public static final int MAX_BOX_SIZE = 5;
+
+    private static final Topology[] INSTANCES = new Topology[MAX_BOX_SIZE + 1];
+
+    static {
+        for (int boxSize = MIN_BOX_SIZE; boxSize <= MAX_BOX_SIZE; boxSize++) {
+            INSTANCES[boxSize] = new Topology(boxSize);
+        }
+    }
+
+    public static final Topology STANDARD = INSTANCES[3];
+
+    private final int boxSize;
+    private final int size;
+    private final int numCells;
+    private final int numUnits;
+    private final int numPeers;
+    private final int numIntersections;
+
+    // Mask with bits 1 to size set, i.e. every value still possible
+    private final int allValues;
+
+    // Row, column, and block number of each cell
+    private final int[] rowOf;
+    private final int[] colOf;
+    private final int[] blockOf;
+
+    // The unit indexes of each cell's row, column, and block, in that order
+    private final int[][] unitsOf;
+
+    // The cells of each unit. Block cells are in row major order within the block.
+    private final int[][] units;
+
+    // The other cells sharing a row, column, or block with each cell
+    private final int[][] peers;
+
+    // Box-line intersections: the boxSize cells a block shares with one of its rows or columns.
+    // Intersection 2*boxSize*blockNum + i is the block's i'th row for i < boxSize, and its (i-boxSize)'th column after.
+    private final int[] intersectionBlock;
+    private final int[] intersectionLine;
+    private final int[][] intersectionCells;
+
+    // The cells of the line outside the block, and the cells of the block outside the line
+    private final int[][] intersectionRestOfLine;
+    private final int[][] intersectionRestOfBlock;
+
+    private Topology(int boxSize) {
+        int n = boxSize * boxSize;
+        this.boxSize = boxSize;
+        this.size = n;
+        this.numCells = n * n;
+        this.numUnits = 3 * n;
+        this.numPeers = 3*n - 2*boxSize - 1;
+        this.numIntersections = 2 * boxSize * n;
+        this.allValues = (1 << (n + 1)) - 2;
+
+        rowOf = new int[numCells];
+        colOf = new int[numCells];
+        blockOf = new int[numCells];
+        unitsOf = new int[numCells][3];
+        units = new int[numUnits][n];
+        peers = new int[numCells][numPeers];
+        intersectionBlock = new int[numIntersections];
+        intersectionLine = new int[numIntersections];
+        intersectionCells = new int[numIntersections][boxSize];
+        intersectionRestOfLine = new int[numIntersections][n - boxSize];
+        intersectionRestOfBlock = new int[numIntersections][n - boxSize];
+
+        for (int cell = 0; cell < numCells; cell++) {
+            int row = cell / n;
+            int col = cell % n;
+            int block = row - row%boxSize + col/boxSize;
+            rowOf[cell] = row;
+            colOf[cell] = col;
+            blockOf[cell] = block;
+            unitsOf[cell][0] = row;
+            unitsOf[cell][1] = n + col;
+            unitsOf[cell][2] = 2*n + block;
+            units[row][col] = cell;
+            units[n + col][row] = cell;
+            units[2*n + block][boxSize*(row%boxSize) + col%boxSize] = cell;
+        }
+
+        for (int cell = 0; cell < numCells; cell++) {
+            int numFound = 0;
+            for (int other = 0; other < numCells; other++) {
+                if(other != cell && (rowOf[other] == rowOf[cell] || colOf[other] == colOf[cell]
+                                     || blockOf[other] == blockOf[cell])) {
+                    peers[cell][numFound++] = other;
+                }
+            }
+        }
+
+        for (int block = 0; block < n; block++) {
+            for (int i = 0; i < 2*boxSize; i++) {
+                int k = 2*boxSize*block + i;
+                int line = i < boxSize ? block - block%boxSize + i : n + boxSize*(block%boxSize) + (i - boxSize);
+                intersectionBlock[k] = 2*n + block;
+                intersectionLine[k] = line;
+
+                int numShared = 0, numRestOfBlock = 0, numRestOfLine = 0;
+                for (int cell : units[2*n + block]) {
+                    if(isInUnit(cell, line))
+                        intersectionCells[k][numShared++] = cell;
+                    else
+                        intersectionRestOfBlock[k][numRestOfBlock++] = cell;
+                }
+                for (int cell : units[line]) {
+                    if(blockOf[cell] != block)
+                        intersectionRestOfLine[k][numRestOfLine++] = cell;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the topology of grids with the given box size, e.g. 3 for 9x9 grids
+     * @throws IllegalArgumentException if boxSize is not between MIN_BOX_SIZE and MAX_BOX_SIZE
+     */
+    public static Topology of(int boxSize) {
+        if(boxSize < MIN_BOX_SIZE || boxSize > MAX_BOX_SIZE)
+            throw new IllegalArgumentException("Error: Unsupported box size " + boxSize);
+        return INSTANCES[boxSize];
+    }
+
+    /**
+     * Returns the topology of grids with the given number of rows, e.g. 9 or 16
+     * @throws IllegalArgumentException if size is not the square of a supported box size
+     */
+    public static Topology forSize(int size) {
+        for (int boxSize = MIN_BOX_SIZE; boxSize <= MAX_BOX_SIZE; boxSize++) {
+            if(boxSize * boxSize == size)
+                return INSTANCES[boxSize];
+        }
+        throw new IllegalArgumentException("Error: Incorrect board size " + size);
+    }
+
+    /**
+     * Returns the topology of grids with the given number of cells, e.g. 81 or 256, or null if there is none
+     */
+    public static Topology forNumCells(int numCells) {
+        for (int boxSize = MIN_BOX_SIZE; boxSize <= MAX_BOX_SIZE; boxSize++) {
+            if(INSTANCES[boxSize].numCells == numCells)
+                return INSTANCES[boxSize];
+        }
+        return null;
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    /**
+     * Returns the number of rows, columns, blocks and values
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    public int getNumUnits() {
+        return numUnits;
+    }
+
+    public int getNumPeers() {
+        return numPeers;
+    }
+
+    public int getNumIntersections() {
+        return numIntersections;
+    }
+
+    /**
+     * Returns the number of 64 bit words in a set of cells, one bit per cell index
+     */
+    public int getNumCellWords() {
+        return (numCells + 63) >>> 6;
+    }
+
+    /**
+     * Returns the mask with bits 1 to size set, i.e. every value still possible
+     */
+    public int getAllValues() {
+        return allValues;
+    }
+
+    public int[] getRowOf() {
+        return rowOf;
+    }
+
+    public int[] getColOf() {
+        return colOf;
+    }
+
+    public int[] getBlockOf() {
+        return blockOf;
+    }
+
+    public int[][] getUnitsOf() {
+        return unitsOf;
+    }
+
+    public int[][] getUnits() {
+        return units;
+    }
+
+    public int[][] getPeers() {
+        return peers;
+    }
+
+    public int[] getIntersectionBlock() {
+        return intersectionBlock;
+    }
+
+    public int[] getIntersectionLine() {
+        return intersectionLine;
+    }
+
+    public int[][] getIntersectionCells() {
+        return intersectionCells;
+    }
+
+    public int[][] getIntersectionRestOfLine() {
+        return intersectionRestOfLine;
+    }
+
+    public int[][] getIntersectionRestOfBlock() {
+        return intersectionRestOfBlock;
+    }
+
+    public int unitIndex(Region region, int regionNum) {
+        return size*region.ordinal() + regionNum;
+    }
+
+    public boolean isInUnit(int cell, int unit) {
+        int[] cellUnits = unitsOf[cell];
+        return cellUnits[0] == unit || cellUnits[1] == unit || cellUnits[2] == unit;
+    }
+
+    @Override
+    public String toString() {
+        return size + "x" + size;
+    }
+}
@@ -0,0 +1,383 @@
+package com.cs261a.sudoku.cache;
+
+import com.cs261a.sudoku.BatchSolver;
+import com.cs261a.sudoku.Canonicalizer;
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.rating.Rater;
+import com.cs261a.sudoku.rating.Rating;
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of puzzle solutions and ratings, held off the Java heap in direct buffers so millions
+ * of entries cost the garbage collector nothing.
+ *
+ * Entries are fixed size: the puzzle's givens and its solution packed 4 bits a cell, and the rating's
+ * counts. An entry may hold a solution without a rating, as BatchSolver caches them. The cache is set
+ * associative: a puzzle's hash picks a bucket of WAYS entries, and when the bucket is full a CLOCK hand
+ * sweeps it, evicting the first entry not used since the hand last passed.
+ * Buckets are locked in stripes, so threads working on different puzzles rarely wait for each other.
+ *
+ * With canonical keys, puzzles are stored under their Canonicalizer form, so every relabeled, permuted
+ * or transposed copy of a puzzle shares one entry. The solution is mapped back to the submitted copy
+ * on each hit, and the rating is the one of the first copy solved.
+ */
+public class SolutionCache {
+
+    // Entries per bucket
+    public static final int WAYS = 8;
+
+    private static final int NUM_TYPES = TechniqueType.values().length;
+
+    // Bytes of 81 cells packed 4 bits each
+    private static final int PACKED_LENGTH = 41;
+
+    // Entry layout
+    private static final int FLAGS = 0;
+    private static final int RATING_FLAGS = 1;
+    private static final int NUM_STEPS = 2;
+    private static final int KEY = 4;
+    private static final int SOLUTION = KEY + PACKED_LENGTH;
+    private static final int COUNTS = SOLUTION + PACKED_LENGTH;
+    private static final int ENTRY_SIZE = (COUNTS + 2 * NUM_TYPES + 7) & ~7;
+
+    private static final int OCCUPIED = 1;
+    private static final int REFERENCED = 2;
+    private static final int SEARCH_USED = 1;
+    private static final int SOLVED = 2;
+    private static final int RATED = 4;
+
+    // Each bucket starts with its CLOCK hand, padded to keep entries 8 byte aligned
+    private static final int BUCKET_SIZE = 8 + WAYS * ENTRY_SIZE;
+
+    // Buffers hold whole buckets and are kept under 1 GB, well inside a ByteBuffer's int range
+    private static final int BUCKETS_PER_SLAB = (1 << 30) / BUCKET_SIZE;
+
+    private static final int NUM_STRIPES = 256;
+
+    private final ByteBuffer[] slabs;
+    private final long numBuckets;
+    private final boolean canonicalKeys;
+    private final Object[] locks = new Object[NUM_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Creates a cache keyed by the puzzles exactly as submitted
+     * @param maxBytes - off-heap memory to use; at least one bucket is always allocated
+     */
+    public SolutionCache(long maxBytes) {
+        this(maxBytes, false);
+    }
+
+    /**
+     * @param maxBytes - off-heap memory to use; at least one bucket is always allocated
+     * @param canonicalKeys - if true, equivalent puzzles share an entry (see Canonicalizer)
+     */
+    public SolutionCache(long maxBytes, boolean canonicalKeys) {
+        this.numBuckets = Math.max(1, maxBytes / BUCKET_SIZE);
+        this.canonicalKeys = canonicalKeys;
+
+        int numSlabs = (int) ((numBuckets + BUCKETS_PER_SLAB - 1) / BUCKETS_PER_SLAB);
+        this.slabs = new ByteBuffer[numSlabs];
+        for (int i = 0; i < numSlabs; i++) {
+            long bucketsInSlab = Math.min(BUCKETS_PER_SLAB, numBuckets - (long) i * BUCKETS_PER_SLAB);
+            slabs[i] = ByteBuffer.allocateDirect((int) bucketsInSlab * BUCKET_SIZE);
+        }
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the cached solution and rating of an 81 character puzzle line, or null if it isn't cached.
+     * @throws IllegalArgumentException if the line is not 81 characters of '1'-'9', '0' or '.'
+     */
+    public Entry get(CharSequence puzzle) {
+        Canonicalizer.CanonicalForm form = canonicalKeys ? Canonicalizer.canonicalize(puzzle) : null;
+        Entry entry = lookup(pack(form != null ? form.getPuzzle() : puzzle));
+        if(entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return form != null ? entry.revert(form.getTransform()) : entry;
+    }
+
+    /**
+     * Caches the solution and rating of an 81 character puzzle line, replacing any entry it already has.
+     * @param solution - 81 characters; anything but '1'-'9' is stored as empty
+     * @param rating - or null to cache just the solution, which must then be complete
+     */
+    public void put(CharSequence puzzle, CharSequence solution, Rating rating) {
+        byte[] key;
+        if(canonicalKeys) {
+            Canonicalizer.CanonicalForm form = Canonicalizer.canonicalize(puzzle);
+            key = pack(form.getPuzzle());
+            solution = form.getTransform().apply(solution);
+        } else {
+            key = pack(puzzle);
+        }
+        store(key, pack(solution), rating);
+    }
+
+    /**
+     * Returns the cached entry for the puzzle, or rates it (which solves it) and caches the result. An entry
+     * cached without a rating is rated again. If the rater fails on the puzzle, the entry returned has no
+     * solution and Rating.invalid(), and is not cached.
+     * Two threads missing on the same puzzle at once may both rate it.
+     * @throws IllegalArgumentException if the line is not 81 characters of '1'-'9', '0' or '.'
+     */
+    public Entry getOrSolve(CharSequence puzzle, Rater rater) {
+        Entry entry = get(puzzle);
+        if(entry != null && entry.getRating() != null)
+            return entry;
+
+        Grid grid = new Grid(BatchSolver.parsePuzzle(puzzle));
+        Rating rating;
+        try {
+            rating = rater.rate(grid);
+        } catch (RuntimeException e) {
+            return new Entry(null, Rating.invalid());
+        }
+        String solution = rating.isSolved() ? grid.toPuzzleString() : null;
+        put(puzzle, solution != null ? solution : puzzle, rating);
+        return new Entry(solution, rating);
+    }
+
+    private Entry lookup(byte[] key) {
+        long bucket = bucketOf(key);
+        ByteBuffer slab = slabs[(int) (bucket / BUCKETS_PER_SLAB)];
+        int base = (int) (bucket % BUCKETS_PER_SLAB) * BUCKET_SIZE + 8;
+
+        synchronized (lockOf(bucket)) {
+            for (int way = 0; way < WAYS; way++) {
+                int entry = base + way * ENTRY_SIZE;
+                if((slab.get(entry + FLAGS) & OCCUPIED) != 0 && keyEquals(slab, entry, key)) {
+                    slab.put(entry + FLAGS, (byte) (OCCUPIED | REFERENCED));
+                    return readEntry(slab, entry);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void store(byte[] key, byte[] solution, Rating rating) {
+        long bucket = bucketOf(key);
+        ByteBuffer slab = slabs[(int) (bucket / BUCKETS_PER_SLAB)];
+        int bucketStart = (int) (bucket % BUCKETS_PER_SLAB) * BUCKET_SIZE;
+        int base = bucketStart + 8;
+
+        synchronized (lockOf(bucket)) {
+            // Replace the puzzle's own entry, or else take a free one
+            int target = -1;
+            for (int way = 0; way < WAYS; way++) {
+                int entry = base + way * ENTRY_SIZE;
+                if((slab.get(entry + FLAGS) & OCCUPIED) == 0) {
+                    if(target < 0)
+                        target = entry;
+                } else if(keyEquals(slab, entry, key)) {
+                    target = entry;
+                    break;
+                }
+            }
+
+            if(target < 0) {
+                target = evict(slab, bucketStart);
+                evictions.increment();
+            } else if((slab.get(target + FLAGS) & OCCUPIED) == 0) {
+                size.incrementAndGet();
+            }
+            writeEntry(slab, target, key, solution, rating);
+        }
+    }
+
+    /**
+     * Sweeps the bucket's CLOCK hand, clearing referenced bits, until it reaches an entry not referenced
+     * since the last sweep. Returns that entry's offset and leaves the hand just past it.
+     */
+    private static int evict(ByteBuffer slab, int bucketStart) {
+        int hand = slab.get(bucketStart);
+        while(true) {
+            int entry = bucketStart + 8 + hand * ENTRY_SIZE;
+            hand = (hand + 1) % WAYS;
+            byte flags = slab.get(entry + FLAGS);
+            if((flags & REFERENCED) == 0) {
+                slab.put(bucketStart, (byte) hand);
+                return entry;
+            }
+            slab.put(entry + FLAGS, (byte) (flags & ~REFERENCED));
+        }
+    }
+
+    private static void writeEntry(ByteBuffer slab, int entry, byte[] key, byte[] solution, Rating rating) {
+        // New entries start unreferenced, so a puzzle seen only once is the first to go
+        slab.put(entry + FLAGS, (byte) OCCUPIED);
+        if(rating == null) {
+            slab.put(entry + RATING_FLAGS, (byte) SOLVED);
+        } else {
+            slab.put(entry + RATING_FLAGS, (byte) (RATED | (rating.isSearchUsed() ? SEARCH_USED : 0)
+                                                   | (rating.isSolved() ? SOLVED : 0)));
+        }
+        slab.putShort(entry + NUM_STEPS, (short) (rating == null ? 0 : Math.min(rating.getNumSteps(), 0xFFFF)));
+        for (int i = 0; i < PACKED_LENGTH; i++) {
+            slab.put(entry + KEY + i, key[i]);
+            slab.put(entry + SOLUTION + i, solution[i]);
+        }
+        TechniqueType[] types = TechniqueType.values();
+        for (int i = 0; i < NUM_TYPES; i++) {
+            int count = rating == null ? 0 : Math.min(rating.getCount(types[i]), 0xFFFF);
+            slab.putShort(entry + COUNTS + 2 * i, (short) count);
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer slab, int entry) {
+        int ratingFlags = slab.get(entry + RATING_FLAGS);
+        Rating rating = null;
+        if((ratingFlags & RATED) != 0) {
+            int[] counts = new int[NUM_TYPES];
+            for (int i = 0; i < NUM_TYPES; i++) {
+                counts[i] = slab.getShort(entry + COUNTS + 2 * i) & 0xFFFF;
+            }
+            rating = new Rating(counts, slab.getShort(entry + NUM_STEPS) & 0xFFFF,
+                                (ratingFlags & SEARCH_USED) != 0, (ratingFlags & SOLVED) != 0);
+        }
+
+        String solution = null;
+        if((ratingFlags & SOLVED) != 0) {
+            char[] cells = new char[81];
+            for (int index = 0; index < 81; index++) {
+                int packed = slab.get(entry + SOLUTION + index / 2);
+                cells[index] = (char) ('0' + ((index & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF));
+            }
+            solution = new String(cells);
+        }
+        return new Entry(solution, rating);
+    }
+
+    private static boolean keyEquals(ByteBuffer slab, int entry, byte[] key) {
+        for (int i = 0; i < PACKED_LENGTH; i++) {
+            if(slab.get(entry + KEY + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Packs 81 cells 4 bits each, the even cell of each pair in the low nibble. Anything but '1'-'9' is 0.
+     * @throws IllegalArgumentException if the line does not have 81 characters
+     */
+    private static byte[] pack(CharSequence grid) {
+        if(grid.length() != 81)
+            throw new IllegalArgumentException("Error: Puzzle line must have 81 characters, found " + grid.length());
+
+        byte[] packed = new byte[PACKED_LENGTH];
+        for (int index = 0; index < 81; index++) {
+            char c = grid.charAt(index);
+            int val = c >= '1' && c <= '9' ? c - '0' : 0;
+            packed[index / 2] |= (index & 1) == 0 ? val : val << 4;
+        }
+        return packed;
+    }
+
+    private long bucketOf(byte[] key) {
+        long hash = 0;
+        for (int i = 0; i < PACKED_LENGTH; i++) {
+            hash = (hash ^ (key[i] & 0xFF)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 29;
+        return Math.floorMod(hash, numBuckets);
+    }
+
+    private Object lockOf(long bucket) {
+        return locks[(int) (bucket % NUM_STRIPES)];
+    }
+
+    /**
+     * Empties the cache. Counters are kept.
+     */
+    public void clear() {
+        for (int s = 0; s < NUM_STRIPES; s++) {
+            synchronized (locks[s]) {
+                for (long bucket = s; bucket < numBuckets; bucket += NUM_STRIPES) {
+                    ByteBuffer slab = slabs[(int) (bucket / BUCKETS_PER_SLAB)];
+                    int bucketStart = (int) (bucket % BUCKETS_PER_SLAB) * BUCKET_SIZE;
+                    for (int i = 0; i < BUCKET_SIZE; i++) {
+                        slab.put(bucketStart + i, (byte) 0);
+                    }
+                }
+            }
+        }
+        size.set(0);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of entries held
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the most entries the cache can hold
+     */
+    public long getCapacity() {
+        return numBuckets * WAYS;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses, %d evictions",
+                getSize(), getCapacity(), getHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * A cached solution and rating, copied onto the heap
+     */
+    public static final class Entry {
+        private final String solution;
+        private final Rating rating;
+
+        Entry(String solution, Rating rating) {
+            this.solution = solution;
+            this.rating = rating;
+        }
+
+        /**
+         * Returns the solution as 81 digits, or null if the puzzle has no solution
+         */
+        public String getSolution() {
+            return solution;
+        }
+
+        /**
+         * Returns the rating, or null if only the solution was cached
+         */
+        public Rating getRating() {
+            return rating;
+        }
+
+        private Entry revert(Canonicalizer.Transform transform) {
+            return solution == null ? this : new Entry(transform.revert(solution), rating);
+        }
+    }
+}
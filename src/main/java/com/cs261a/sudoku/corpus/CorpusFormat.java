@@ -0,0 +1,244 @@
+package com.cs261a.sudoku.corpus;
+
+import com.cs261a.sudoku.rating.Rating;
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of corpus files, shared by CorpusWriter and CorpusReader. All numbers are big endian.
+ *
+ * A file is a header, the records, an index holding the file offset of every block's first record, and a
+ * trailer holding the number of records and the index's offset. The index comes last so a writer can stream
+ * to any output, and a reader finds it from the end of the file.
+ *
+ * A record is its length in bytes (one unsigned byte, counting itself), its flags, an 11 byte bitmap of the
+ * given cells, then 4 bit cell values, the even cell of each pair in the low nibble. If the record has a
+ * solution, there is a value for each of the 81 cells, and the givens are the cells in the bitmap; otherwise
+ * there is a value only for each given cell, in cell order. If the record is rated, the rating follows: its
+ * number of steps, a 16 bit mask of the techniques used (by TechniqueType ordinal), and the count of each
+ * technique in the mask, all counts as unsigned varints.
+ * A record standing for an input line that was not a puzzle has only the INVALID flag and an empty bitmap.
+ */
+final class CorpusFormat {
+
+    // "SDKC"
+    static final int MAGIC = 0x53444B43;
+    static final int VERSION = 1;
+
+    // Magic, version (short), grid size (byte), number of technique types (byte), records per block, reserved
+    static final int HEADER_LENGTH = 16;
+    // Number of records, index offset, magic, reserved
+    static final int TRAILER_LENGTH = 24;
+
+    static final int SIZE = 9;
+    static final int NUM_CELLS = 81;
+    static final int NUM_TYPES = TechniqueType.values().length;
+
+    // Record layout
+    static final int LENGTH = 0;
+    static final int FLAGS = 1;
+    static final int BITMAP = 2;
+    static final int BITMAP_LENGTH = (NUM_CELLS + 7) / 8;
+    static final int VALUES = BITMAP + BITMAP_LENGTH;
+
+    static final int HAS_SOLUTION = 1;
+    static final int RATED = 2;
+    static final int SEARCH_USED = 4;
+    static final int SOLVED = 8;
+    static final int INVALID = 16;
+    private static final int ALL_FLAGS = HAS_SOLUTION | RATED | SEARCH_USED | SOLVED | INVALID;
+
+    // A full solution, a rating with every count at the varint maximum of 5 bytes, and the technique mask
+    static final int MAX_RECORD_LENGTH = VALUES + (NUM_CELLS + 1) / 2 + 5 + 2 + 5 * NUM_TYPES;
+
+    private CorpusFormat() {
+    }
+
+    /**
+     * Writes a record into dest starting at offset
+     * @param givens - the 81 cell values of the puzzle, 0 for empty cells
+     * @param solution - the 81 cell values of its solution, or null if it has none
+     * @param rating - or null if the puzzle is not rated
+     * @return the length of the record
+     * @throws IllegalArgumentException if a value is out of range or the solution does not complete the givens
+     */
+    static int encode(int[] givens, int[] solution, Rating rating, byte[] dest, int offset) {
+        int flags = (solution != null ? HAS_SOLUTION : 0) | (rating != null ? RATED : 0);
+        if(rating != null)
+            flags |= (rating.isSearchUsed() ? SEARCH_USED : 0) | (rating.isSolved() ? SOLVED : 0);
+
+        for (int i = 0; i < BITMAP_LENGTH; i++) {
+            dest[offset + BITMAP + i] = 0;
+        }
+        int pos = offset + VALUES;
+        int numValues = 0;
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            int given = givens[cell];
+            if(given < 0 || given > SIZE)
+                throw new IllegalArgumentException("Error: Invalid value " + given + " for cell " + cell);
+            if(given != 0)
+                dest[offset + BITMAP + (cell >>> 3)] |= 1 << (cell & 7);
+
+            int value = given;
+            if(solution != null) {
+                value = solution[cell];
+                if(value < 1 || value > SIZE || (given != 0 && given != value))
+                    throw new IllegalArgumentException("Error: Solution does not complete the puzzle at cell " + cell);
+            } else if(given == 0) {
+                continue;
+            }
+            if((numValues & 1) == 0) {
+                dest[pos + numValues / 2] = (byte) value;
+            } else {
+                dest[pos + numValues / 2] |= value << 4;
+            }
+            numValues++;
+        }
+        pos += (numValues + 1) / 2;
+
+        if(rating != null) {
+            pos = putVarint(dest, pos, rating.getNumSteps());
+            int maskPos = pos;
+            pos += 2;
+            int mask = 0;
+            for (TechniqueType type : TechniqueType.values()) {
+                int count = rating.getCount(type);
+                if(count > 0) {
+                    mask |= 1 << type.ordinal();
+                    pos = putVarint(dest, pos, count);
+                }
+            }
+            dest[maskPos] = (byte) (mask >>> 8);
+            dest[maskPos + 1] = (byte) mask;
+        }
+
+        dest[offset + LENGTH] = (byte) (pos - offset);
+        dest[offset + FLAGS] = (byte) flags;
+        return pos - offset;
+    }
+
+    /**
+     * Writes an invalid record into dest starting at offset
+     * @return the length of the record
+     */
+    static int encodeInvalid(byte[] dest, int offset) {
+        dest[offset + LENGTH] = (byte) VALUES;
+        dest[offset + FLAGS] = (byte) INVALID;
+        for (int i = 0; i < BITMAP_LENGTH; i++) {
+            dest[offset + BITMAP + i] = 0;
+        }
+        return VALUES;
+    }
+
+    /**
+     * Returns the length of the record at offset
+     * @throws IllegalArgumentException if it can't be the start of a record, or the buffer ends before its
+     *                                  fixed fields do
+     */
+    static int recordLength(ByteBuffer buffer, int offset) {
+        if(offset + VALUES > buffer.limit())
+            throw new IllegalArgumentException("Error: Corpus record at offset " + offset + " is cut short");
+        int length = buffer.get(offset + LENGTH) & 0xFF;
+        int flags = buffer.get(offset + FLAGS) & 0xFF;
+        if(length < VALUES || (flags & ~ALL_FLAGS) != 0)
+            throw new IllegalArgumentException("Error: Malformed corpus record at offset " + offset);
+        return length;
+    }
+
+    static boolean isInvalid(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset + FLAGS) & INVALID) != 0;
+    }
+
+    static boolean hasSolution(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset + FLAGS) & HAS_SOLUTION) != 0;
+    }
+
+    static boolean isGiven(ByteBuffer buffer, int offset, int cell) {
+        return (buffer.get(offset + BITMAP + (cell >>> 3)) & (1 << (cell & 7))) != 0;
+    }
+
+    /**
+     * Reads the givens of the record at offset into values, 0 for empty cells
+     */
+    static void decodeGivens(ByteBuffer buffer, int offset, int[] values) {
+        boolean hasSolution = hasSolution(buffer, offset);
+        int numValues = 0;
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            if(isGiven(buffer, offset, cell)) {
+                values[cell] = nibble(buffer, offset + VALUES, hasSolution ? cell : numValues++);
+            } else {
+                values[cell] = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the solution of the record at offset into values
+     * @return false, leaving values unchanged, if the record has no solution
+     */
+    static boolean decodeSolution(ByteBuffer buffer, int offset, int[] values) {
+        if(!hasSolution(buffer, offset))
+            return false;
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            values[cell] = nibble(buffer, offset + VALUES, cell);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the rating of the record at offset, or returns null if the record is not rated
+     * @param numTypes - the number of technique types the file was written with
+     */
+    static Rating decodeRating(ByteBuffer buffer, int offset, int numTypes) {
+        int flags = buffer.get(offset + FLAGS);
+        if((flags & RATED) == 0)
+            return null;
+
+        int numValues = 0;
+        if((flags & HAS_SOLUTION) != 0) {
+            numValues = NUM_CELLS;
+        } else {
+            for (int i = 0; i < BITMAP_LENGTH; i++) {
+                numValues += Integer.bitCount(buffer.get(offset + BITMAP + i) & 0xFF);
+            }
+        }
+        int[] pos = {offset + VALUES + (numValues + 1) / 2};
+        int numSteps = getVarint(buffer, pos);
+        int mask = buffer.getShort(pos[0]) & 0xFFFF;
+        pos[0] += 2;
+        int[] counts = new int[NUM_TYPES];
+        for (int type = 0; type < numTypes; type++) {
+            if((mask & (1 << type)) != 0)
+                counts[type] = getVarint(buffer, pos);
+        }
+        return new Rating(counts, numSteps, (flags & SEARCH_USED) != 0, (flags & SOLVED) != 0);
+    }
+
+    private static int nibble(ByteBuffer buffer, int start, int index) {
+        int packed = buffer.get(start + index / 2);
+        return (index & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF;
+    }
+
+    private static int putVarint(byte[] dest, int pos, int value) {
+        while((value & ~0x7F) != 0) {
+            dest[pos++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        dest[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Reads an unsigned varint at pos[0], advancing it past the varint
+     */
+    private static int getVarint(ByteBuffer buffer, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get(pos[0]++);
+            value |= (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+    }
+}
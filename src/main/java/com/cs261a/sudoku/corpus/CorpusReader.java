@@ -0,0 +1,314 @@
+package com.cs261a.sudoku.corpus;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.rating.Rating;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads corpus files written by CorpusWriter by memory mapping them. The block index is read when the file is
+ * opened, so any run of records is found by mapping from the start of its block, without reading the records
+ * before it. Files under 2 GB are mapped once; larger ones are mapped a chunk at a time.
+ * Chunks only use absolute gets, so each can be handed to its own worker thread.
+ */
+public class CorpusReader implements Closeable {
+
+    private final FileChannel channel;
+    private final int recordsPerBlock;
+    private final int numTypes;
+    private final long numRecords;
+    // File offset of the first record of each block, then of the index, where the last block ends
+    private final long[] blockOffsets;
+    // The whole file, if it fits in one mapping
+    private final ByteBuffer mapping;
+
+    public CorpusReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size < CorpusFormat.HEADER_LENGTH + CorpusFormat.TRAILER_LENGTH)
+                throw new IllegalArgumentException("Error: " + path + " is not a corpus file");
+
+            ByteBuffer header = readBytes(0, CorpusFormat.HEADER_LENGTH);
+            if(header.getInt(0) != CorpusFormat.MAGIC)
+                throw new IllegalArgumentException("Error: " + path + " is not a corpus file");
+            if(header.getShort(4) != CorpusFormat.VERSION || header.get(6) != CorpusFormat.SIZE)
+                throw new IllegalArgumentException("Error: " + path + " has an unsupported corpus version or grid size");
+            this.numTypes = header.get(7);
+            this.recordsPerBlock = header.getInt(8);
+            if(numTypes > CorpusFormat.NUM_TYPES || recordsPerBlock < 1
+               || recordsPerBlock > CorpusWriter.MAX_RECORDS_PER_BLOCK)
+                throw new IllegalArgumentException("Error: " + path + " has an unsupported corpus header");
+
+            ByteBuffer trailer = readBytes(size - CorpusFormat.TRAILER_LENGTH, CorpusFormat.TRAILER_LENGTH);
+            this.numRecords = trailer.getLong(0);
+            long indexOffset = trailer.getLong(8);
+            long numBlocks = (numRecords + recordsPerBlock - 1) / recordsPerBlock;
+            if(trailer.getInt(16) != CorpusFormat.MAGIC || numRecords < 0
+               || indexOffset + 8 * numBlocks + CorpusFormat.TRAILER_LENGTH != size)
+                throw new IllegalArgumentException("Error: " + path + " is truncated or not a corpus file");
+
+            this.blockOffsets = new long[(int) numBlocks + 1];
+            ByteBuffer index = readBytes(indexOffset, (int) (8 * numBlocks));
+            for (int block = 0; block < numBlocks; block++) {
+                blockOffsets[block] = index.getLong(8 * block);
+            }
+            blockOffsets[(int) numBlocks] = indexOffset;
+
+            this.mapping = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the file starts with a corpus header, so it should be read with a CorpusReader
+     */
+    public static boolean isCorpus(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while(magic.hasRemaining() && file.read(magic) >= 0) {
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == CorpusFormat.MAGIC;
+        }
+    }
+
+    private ByteBuffer readBytes(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new IllegalArgumentException("Error: Corpus file is truncated");
+        }
+        return buffer;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    public int getRecordsPerBlock() {
+        return recordsPerBlock;
+    }
+
+    /**
+     * Maps count records starting at record first, counting from 0. Only the block index and the records of the
+     * first's block before it are read to find them.
+     * @throws IndexOutOfBoundsException if the records are not all in the file
+     */
+    public Chunk read(long first, int count) throws IOException {
+        if(first < 0 || count < 0 || first + count > numRecords)
+            throw new IndexOutOfBoundsException("Error: Records " + first + " to " + (first + count)
+                                                + " are not in a corpus of " + numRecords);
+        if(count == 0)
+            return new Chunk(ByteBuffer.allocate(0), new int[1], first, numTypes);
+
+        int firstBlock = (int) (first / recordsPerBlock);
+        int endBlock = (int) ((first + count + recordsPerBlock - 1) / recordsPerBlock);
+        long start = blockOffsets[firstBlock];
+        long end = blockOffsets[endBlock];
+
+        ByteBuffer buffer;
+        int base;
+        if(mapping != null) {
+            buffer = mapping.duplicate();
+            base = (int) start;
+        } else {
+            if(end - start > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Error: Records " + first + " to " + (first + count)
+                                                   + " are too large to map at once");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            base = 0;
+        }
+
+        int offset = base;
+        for (long skip = first - (long) firstBlock * recordsPerBlock; skip > 0; skip--) {
+            offset += CorpusFormat.recordLength(buffer, offset);
+        }
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = offset;
+            offset += CorpusFormat.recordLength(buffer, offset);
+        }
+        offsets[count] = offset;
+        return new Chunk(buffer, offsets, first, numTypes);
+    }
+
+    /**
+     * Maps the whole file as chunks of at most recordsPerChunk records, in file order
+     */
+    public List<Chunk> chunks(int recordsPerChunk) throws IOException {
+        List<Chunk> chunks = new ArrayList<Chunk>((int) (numRecords / recordsPerChunk + 1));
+        for (long first = 0; first < numRecords; first += recordsPerChunk) {
+            chunks.add(read(first, (int) Math.min(recordsPerChunk, numRecords - first)));
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A run of consecutive records within a mapped region of the file, readable after the reader is closed
+     */
+    public static class Chunk {
+        private final ByteBuffer buffer;
+        // Buffer offset of each record, then of the end of the last
+        private final int[] offsets;
+        private final long firstRecord;
+        private final int numTypes;
+
+        Chunk(ByteBuffer buffer, int[] offsets, long firstRecord, int numTypes) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+            this.firstRecord = firstRecord;
+            this.numTypes = numTypes;
+        }
+
+        /**
+         * Returns the position in the file of this chunk's first record, counting records from 0
+         */
+        public long getFirstRecord() {
+            return firstRecord;
+        }
+
+        public int getNumRecords() {
+            return offsets.length - 1;
+        }
+
+        /**
+         * Returns true if the i'th record stands for an input that was not a puzzle. It has no givens.
+         */
+        public boolean isInvalid(int i) {
+            return CorpusFormat.isInvalid(buffer, offsets[i]);
+        }
+
+        /**
+         * Reads the givens of the i'th record into values, 0 for empty cells
+         */
+        public void getGivens(int i, int[] values) {
+            CorpusFormat.decodeGivens(buffer, offsets[i], values);
+        }
+
+        /**
+         * Creates a new Grid of the i'th record's puzzle
+         * @throws IllegalArgumentException if the record is invalid
+         */
+        public Grid getGrid(int i) {
+            if(isInvalid(i))
+                throw new IllegalArgumentException("Error: Record " + (firstRecord + i) + " is invalid");
+            int[] values = new int[CorpusFormat.NUM_CELLS];
+            getGivens(i, values);
+            int[][] board = new int[CorpusFormat.SIZE][];
+            for (int row = 0; row < CorpusFormat.SIZE; row++) {
+                board[row] = Arrays.copyOfRange(values, CorpusFormat.SIZE * row, CorpusFormat.SIZE * (row + 1));
+            }
+            return new Grid(board);
+        }
+
+        /**
+         * Returns the i'th record's puzzle as an 81 character line, with '.' for empty cells, or null if the record
+         * is invalid
+         */
+        public String getPuzzle(int i) {
+            if(isInvalid(i))
+                return null;
+            int[] values = new int[CorpusFormat.NUM_CELLS];
+            getGivens(i, values);
+            return toLine(values);
+        }
+
+        public boolean hasSolution(int i) {
+            return CorpusFormat.hasSolution(buffer, offsets[i]);
+        }
+
+        /**
+         * Reads the solution of the i'th record into values
+         * @return false, leaving values unchanged, if the record has no solution
+         */
+        public boolean getSolution(int i, int[] values) {
+            return CorpusFormat.decodeSolution(buffer, offsets[i], values);
+        }
+
+        /**
+         * Returns the i'th record's solution as an 81 character line, or null if it has none
+         */
+        public String getSolution(int i) {
+            int[] values = new int[CorpusFormat.NUM_CELLS];
+            return getSolution(i, values) ? toLine(values) : null;
+        }
+
+        /**
+         * Returns the i'th record's rating, or null if it was not rated
+         */
+        public Rating getRating(int i) {
+            return CorpusFormat.decodeRating(buffer, offsets[i], numTypes);
+        }
+
+        /**
+         * Returns this chunk's records, undecoded, from the buffer's position to its limit, for
+         * CorpusWriter.writeRecords
+         */
+        public ByteBuffer getRecords() {
+            ByteBuffer records = buffer.asReadOnlyBuffer();
+            records.limit(offsets[offsets.length - 1]);
+            records.position(offsets[0]);
+            return records;
+        }
+
+        private static String toLine(int[] values) {
+            char[] line = new char[values.length];
+            for (int i = 0; i < values.length; i++) {
+                line[i] = Grid.valueToChar(values[i]);
+            }
+            return new String(line);
+        }
+    }
+
+    /**
+     * Usage: CorpusReader corpusFile [first [count]]
+     * Prints "puzzle solution rating" for each record from first (default 0), count records (default all),
+     * with '-' for a missing solution or rating and "invalid" for an invalid record's puzzle.
+     */
+    public static void main(String args[]) throws IOException {
+        if(args.length < 1 || args.length > 3 || args[0].startsWith("-")) {
+            System.err.println("Usage: CorpusReader corpusFile [first [count]]");
+            System.exit(1);
+        }
+
+        try (CorpusReader reader = new CorpusReader(Paths.get(args[0]));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16)) {
+            long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+            long count = args.length > 2 ? Long.parseLong(args[2]) : reader.getNumRecords() - first;
+            for (long done = 0; done < count; ) {
+                Chunk chunk = reader.read(first + done, (int) Math.min(1 << 14, count - done));
+                for (int i = 0; i < chunk.getNumRecords(); i++) {
+                    String solution = chunk.getSolution(i);
+                    Rating rating = chunk.getRating(i);
+                    out.write(chunk.isInvalid(i) ? "invalid" : chunk.getPuzzle(i));
+                    out.write(' ');
+                    out.write(solution == null ? "-" : solution);
+                    out.write(' ');
+                    out.write(rating == null ? "-" : rating.toString());
+                    out.write('\n');
+                }
+                done += chunk.getNumRecords();
+            }
+        }
+    }
+}
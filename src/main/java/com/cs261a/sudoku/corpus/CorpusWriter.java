@@ -0,0 +1,317 @@
+package com.cs261a.sudoku.corpus;
+
+import com.cs261a.sudoku.BatchSolver;
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Pools;
+import com.cs261a.sudoku.rating.Rater;
+import com.cs261a.sudoku.rating.Rating;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a corpus file of 9x9 puzzles, each with its solution and rating if known (see CorpusFormat for the
+ * layout). Records are streamed to the output in order, and the block index is written by close, so the
+ * output never needs to seek. A solved, rated 9x9 puzzle takes around 60 bytes, against 164 for its puzzle
+ * and solution lines as text.
+ * Not thread safe, but records can be encoded in parallel with encode and then appended with writeRecords.
+ */
+public class CorpusWriter implements Closeable {
+
+    public static final int DEFAULT_RECORDS_PER_BLOCK = 1 << 12;
+
+    // Keeps every block well under the 2 GB a reader can map at once
+    public static final int MAX_RECORDS_PER_BLOCK = 1 << 20;
+
+    public static final int MAX_RECORD_LENGTH = CorpusFormat.MAX_RECORD_LENGTH;
+
+    // Number of lines read, rated and written at a time by main
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final OutputStream out;
+    private final int recordsPerBlock;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final int[] givens = new int[CorpusFormat.NUM_CELLS];
+    private final int[] solution = new int[CorpusFormat.NUM_CELLS];
+
+    // File offset of the first record of each block
+    private long[] blockOffsets = new long[64];
+    private long numRecords;
+    // Bytes written so far, including those still buffered
+    private long position;
+    private boolean closed;
+
+    public CorpusWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_RECORDS_PER_BLOCK);
+    }
+
+    /**
+     * @param recordsPerBlock - records between index entries. Reading a record starts from its block, so smaller
+     *                        blocks make random access cheaper but the index larger.
+     */
+    public CorpusWriter(OutputStream out, int recordsPerBlock) throws IOException {
+        if(recordsPerBlock < 1 || recordsPerBlock > MAX_RECORDS_PER_BLOCK)
+            throw new IllegalArgumentException("Error: Records per block must be from 1 to " + MAX_RECORDS_PER_BLOCK);
+        this.out = out;
+        this.recordsPerBlock = recordsPerBlock;
+
+        buffer.putInt(CorpusFormat.MAGIC);
+        buffer.putShort((short) CorpusFormat.VERSION);
+        buffer.put((byte) CorpusFormat.SIZE);
+        buffer.put((byte) CorpusFormat.NUM_TYPES);
+        buffer.putInt(recordsPerBlock);
+        buffer.putInt(0);
+        position = CorpusFormat.HEADER_LENGTH;
+    }
+
+    /**
+     * Creates a writer to a new file, or replacing an existing one
+     */
+    public static CorpusWriter open(Path path) throws IOException {
+        return new CorpusWriter(Files.newOutputStream(path));
+    }
+
+    /**
+     * Writes a record into dest starting at offset, for writeRecords to append later. Thread safe.
+     * @param givens - the 81 cell values of the puzzle, row by row, 0 for empty cells
+     * @param solution - the 81 cell values of its solution, or null if it has none
+     * @param rating - or null if the puzzle is not rated
+     * @return the length of the record, at most MAX_RECORD_LENGTH
+     * @throws IllegalArgumentException if a value is out of range or the solution does not complete the givens
+     */
+    public static int encode(int[] givens, int[] solution, Rating rating, byte[] dest, int offset) {
+        if(givens.length != CorpusFormat.NUM_CELLS || (solution != null && solution.length != CorpusFormat.NUM_CELLS))
+            throw new IllegalArgumentException("Error: Corpus records hold 9x9 puzzles");
+        return CorpusFormat.encode(givens, solution, rating, dest, offset);
+    }
+
+    /**
+     * Writes an invalid record, standing for an input that was not a puzzle, into dest starting at offset,
+     * for writeRecords to append later. Thread safe.
+     * @return the length of the record
+     */
+    public static int encodeInvalid(byte[] dest, int offset) {
+        return CorpusFormat.encodeInvalid(dest, offset);
+    }
+
+    /**
+     * Appends a puzzle, given as its determined cells
+     * @param solution - a complete grid, or null if the puzzle has no known solution
+     * @param rating - or null if the puzzle is not rated
+     */
+    public void write(Grid puzzle, Grid solution, Rating rating) throws IOException {
+        if(puzzle.getNumCells() != CorpusFormat.NUM_CELLS)
+            throw new IllegalArgumentException("Error: Corpus records hold 9x9 puzzles");
+        if(solution != null && (solution.getNumCells() != CorpusFormat.NUM_CELLS || !solution.isComplete()))
+            throw new IllegalArgumentException("Error: Solution is not a complete 9x9 grid");
+        for (int i = 0; i < CorpusFormat.NUM_CELLS; i++) {
+            givens[i] = puzzle.getValue(i);
+            if(solution != null)
+                this.solution[i] = solution.getValue(i);
+        }
+
+        ensureOpen();
+        if(buffer.remaining() < MAX_RECORD_LENGTH)
+            flushBuffer();
+        int length = CorpusFormat.encode(givens, solution != null ? this.solution : null, rating,
+                                         buffer.array(), buffer.position());
+        startRecord();
+        buffer.position(buffer.position() + length);
+        position += length;
+    }
+
+    /**
+     * Appends whole records, as made by encode or read from a corpus with CorpusReader.Chunk.getRecords, from
+     * the buffer's position to its limit. The buffer's position is untouched. Copying records between corpora
+     * this way never decodes them, so a corpus can be split or merged at the speed of the disk.
+     * @throws IllegalArgumentException if the bytes are not whole records, in which case none are written
+     */
+    public void writeRecords(ByteBuffer records) throws IOException {
+        ensureOpen();
+        ByteBuffer source = records.duplicate();
+        // Check every record before indexing any, so a bad one can't leave the index ahead of the data
+        int count = 0;
+        for (int offset = source.position(); offset < source.limit(); count++) {
+            int length = CorpusFormat.recordLength(source, offset);
+            if(offset + length > source.limit())
+                throw new IllegalArgumentException("Error: Corpus record at offset " + offset + " is cut short");
+            offset += length;
+        }
+        for (int i = 0, offset = source.position(); i < count; i++) {
+            startRecord(position + offset - source.position());
+            offset += CorpusFormat.recordLength(source, offset);
+        }
+
+        if(source.remaining() > buffer.remaining())
+            flushBuffer();
+        if(source.remaining() > buffer.remaining()) {
+            byte[] copy = new byte[source.remaining()];
+            source.get(copy);
+            out.write(copy);
+        } else {
+            buffer.put(source);
+        }
+        position += records.remaining();
+    }
+
+    private void startRecord() {
+        startRecord(position);
+    }
+
+    /**
+     * Counts a record starting at the given file offset, adding it to the index if it starts a block
+     */
+    private void startRecord(long offset) {
+        if(numRecords % recordsPerBlock == 0) {
+            int block = (int) (numRecords / recordsPerBlock);
+            if(block == blockOffsets.length)
+                blockOffsets = Arrays.copyOf(blockOffsets, 2 * block);
+            blockOffsets[block] = offset;
+        }
+        numRecords++;
+    }
+
+    private void ensureOpen() {
+        if(closed)
+            throw new IllegalStateException("Error: Corpus writer is closed");
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Writes the index and trailer, and closes the output
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        try {
+            long indexOffset = position;
+            int numBlocks = (int) ((numRecords + recordsPerBlock - 1) / recordsPerBlock);
+            for (int block = 0; block < numBlocks; block++) {
+                if(buffer.remaining() < 8)
+                    flushBuffer();
+                buffer.putLong(blockOffsets[block]);
+            }
+            if(buffer.remaining() < CorpusFormat.TRAILER_LENGTH)
+                flushBuffer();
+            buffer.putLong(numRecords);
+            buffer.putLong(indexOffset);
+            buffer.putInt(CorpusFormat.MAGIC);
+            buffer.putInt(0);
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Usage: CorpusWriter [-threads n] [-block n] puzzleFile corpusFile
+     * Converts a file of puzzle lines, as read by BatchSolver, into a corpus. Each puzzle is rated, which also
+     * solves it, so every record holds its rating and, unless the puzzle has no solution, its solution.
+     * Blank lines are skipped, and a line that is not a 9x9 puzzle gives an invalid record.
+     */
+    public static void main(String args[]) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int recordsPerBlock = DEFAULT_RECORDS_PER_BLOCK;
+        int arg = 0;
+        for (; arg + 1 < args.length && args[arg].startsWith("-"); arg += 2) {
+            if(args[arg].equals("-threads")) {
+                parallelism = Integer.parseInt(args[arg + 1]);
+            } else if(args[arg].equals("-block")) {
+                recordsPerBlock = Integer.parseInt(args[arg + 1]);
+            } else {
+                break;
+            }
+        }
+        if(arg + 2 != args.length || args[arg].startsWith("-")) {
+            System.err.println("Usage: CorpusWriter [-threads n] [-block n] puzzleFile corpusFile");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Rater rater = new Rater(1, 0);
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[arg]), StandardCharsets.US_ASCII);
+             CorpusWriter writer = new CorpusWriter(Files.newOutputStream(Paths.get(args[arg + 1])), recordsPerBlock)) {
+            List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.isEmpty())
+                    continue;
+                chunk.add(line);
+                if(chunk.size() == CHUNK_SIZE) {
+                    writeLines(chunk, rater, pool, writer);
+                    chunk.clear();
+                }
+            }
+            writeLines(chunk, rater, pool, writer);
+            System.err.println(String.format("%d puzzles written in %.3f s",
+                    writer.getNumRecords(), (System.nanoTime() - start) / 1e9));
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Rates and encodes the lines in parallel, then appends their records in order
+     */
+    private static void writeLines(List<String> lines, Rater rater, ForkJoinPool pool, CorpusWriter writer)
+            throws IOException {
+        List<byte[]> records = Pools.invoke(pool, () -> lines.parallelStream()
+                                                             .map(line -> encodeLine(line, rater))
+                                                             .collect(Collectors.toList()));
+        for (byte[] record : records) {
+            writer.writeRecords(ByteBuffer.wrap(record));
+        }
+    }
+
+    private static byte[] encodeLine(String line, Rater rater) {
+        Grid grid;
+        try {
+            grid = new Grid(BatchSolver.parsePuzzle(line));
+        } catch (IllegalArgumentException e) {
+            grid = null;
+        }
+        if(grid == null || grid.getNumCells() != CorpusFormat.NUM_CELLS) {
+            byte[] record = new byte[MAX_RECORD_LENGTH];
+            return Arrays.copyOf(record, CorpusFormat.encodeInvalid(record, 0));
+        }
+        int[] givens = new int[CorpusFormat.NUM_CELLS];
+        for (int i = 0; i < givens.length; i++) {
+            givens[i] = grid.getValue(i);
+        }
+
+        // Rating solves the grid in place
+        Rating rating = rater.rate(grid);
+        int[] solution = null;
+        if(rating.isSolved() && grid.isComplete()) {
+            solution = new int[CorpusFormat.NUM_CELLS];
+            for (int i = 0; i < solution.length; i++) {
+                solution[i] = grid.getValue(i);
+            }
+        }
+
+        byte[] record = new byte[MAX_RECORD_LENGTH];
+        return Arrays.copyOf(record, CorpusFormat.encode(givens, solution, rating, record, 0));
+    }
+}
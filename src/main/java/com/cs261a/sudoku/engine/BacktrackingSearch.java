@@ -0,0 +1,503 @@
+package com.cs261a.sudoku.engine;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Topology;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Depth first search over a grid's remaining possible values, choosing the cell with the
+ * fewest remaining values at each node (minimum remaining values). The places a value has left in a row,
+ * column or block count too: a value with no place ends the branch, and a value with fewer places than
+ * the best cell has values is branched on over its places instead (so hidden singles are placed first).
+ * Without that, the search wanders into hopeless subtrees on 16x16 and 25x25 grids.
+ * Even so, the time a search takes is heavy tailed: an early wrong guess on a large grid can cost hours,
+ * where the same puzzle with ties broken another way takes a fraction of a second. So unless the caller sets
+ * its own node budget, a search that runs out of nodes starts over with ties between equally good cells and
+ * the order of their values broken at random, with budgets following the Luby sequence (1, 1, 2, 1, 1, 2, 4...
+ * times RESTART_NODES). Budgets keep growing, so a search that needs the whole tree still finishes. The random
+ * numbers are seeded the same for every search, so results are repeatable.
+ * All state is held in primitive masks: which values each row, column and block already
+ * holds, and which values each cell started out allowing.
+ * An instance is reusable, for grids of any size, but not thread safe.
+ */
+public class BacktrackingSearch {
+
+    // The stop condition is polled once per this many nodes (a power of two)
+    private static final int POLL_INTERVAL = 1 << 10;
+
+    // Nodes per unit of the restart budgets
+    private static final long RESTART_NODES = 1 << 13;
+    private static final long RANDOM_SEED = 0x9E3779B97F4A7C15L;
+
+    // Shape of the grid last loaded, and its tables
+    private Topology topology;
+    private int[] rowOf;
+    private int[] colOf;
+    private int[] blkOf;
+    private int[][] units;
+    private int[][] intersectionCells;
+    private int[][] intersectionRestOfLine;
+    private int[][] intersectionRestOfBlock;
+    private int allValues;
+
+    private int[] values;
+    private int[] allowed;
+    private int[] rowUsed;
+    private int[] colUsed;
+    private int[] blkUsed;
+
+    // Scratch: the values each cell can still take at the current node, 0 for determined cells
+    private int[] remaining;
+
+    // Values removed from allowed by box-line reductions, as (cell, allowed before) pairs to restore on backtracking
+    private int[] trail;
+    private int trailSize;
+
+    // The first solution found by the last search
+    private int[] solution;
+
+    private int numSolutions;
+    private int limit;
+
+    // Nodes visited by the current search, and how many it may visit before giving up
+    private long numNodes;
+    private long maxNodes;
+    private boolean gaveUp;
+    private boolean stopped;
+
+    // Whether this run breaks ties at random, and the xorshift state it draws from
+    private boolean randomTies;
+    private long random;
+
+    // Polled during searches, if set; the search gives up once it returns true
+    private BooleanSupplier stopCondition;
+
+    /**
+     * Completes the grid with the first solution found.
+     * @return true if the grid was solved, false if it has no solution (the grid is then unchanged)
+     * @throws CancellationException if the stop condition ended the search first (the grid is then unchanged)
+     */
+    public boolean solve(Grid grid) {
+        int count = countSolutions(grid, 1);
+        if(count < 0)
+            throw new CancellationException("Search stopped before finding a solution");
+        if(count == 0)
+            return false;
+
+        for (int i = 0; i < values.length; i++) {
+            if(grid.getValue(i) == 0)
+                grid.determineCell(grid.getCell(i), solution[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Counts the solutions of the grid, stopping as soon as 'limit' are found.
+     * @return the number of solutions, at most limit, or -1 if the stop condition ended the search first
+     * @throws IllegalArgumentException if limit is less than 1
+     */
+    public int countSolutions(Grid grid, int limit) {
+        start(limit, Long.MAX_VALUE);
+        if(load(grid))
+            return searchWithRestarts(limit);
+        return numSolutions;
+    }
+
+    /**
+     * Counts the solutions of a puzzle held in the caller's own arrays, so it can be checked again and again
+     * without building a Grid each time. Stops as soon as 'limit' solutions are found.
+     * @param values - value of each cell, indexed as in Topology, 0 for empty cells
+     * @param candidates - the values each empty cell may take, as masks, or null to allow any value
+     * @return the number of solutions, at most limit
+     * @throws IllegalArgumentException if the arrays don't fit the topology, a value is out of range, or limit is
+     *                                  less than 1
+     */
+    public int countSolutions(Topology topology, int[] values, int[] candidates, int limit) {
+        checkLength(topology, values, candidates);
+        start(limit, Long.MAX_VALUE);
+        if(load(topology, values, candidates))
+            return searchWithRestarts(limit);
+        return numSolutions;
+    }
+
+    /**
+     * Like countSolutions(topology, values, candidates, limit), but gives up once the search has visited
+     * maxNodes nodes, so a caller can split a hard puzzle up instead (see SolutionCounter), or once the stop
+     * condition holds.
+     * @return the number of solutions, at most limit, or -1 if the search gave up before finishing
+     */
+    public int countSolutions(Topology topology, int[] values, int[] candidates, int limit, long maxNodes) {
+        checkLength(topology, values, candidates);
+        start(limit, maxNodes);
+        if(load(topology, values, candidates))
+            search();
+        return gaveUp ? -1 : numSolutions;
+    }
+
+    private static void checkLength(Topology topology, int[] values, int[] candidates) {
+        if(values.length != topology.getNumCells() || (candidates != null && candidates.length != values.length))
+            throw new IllegalArgumentException("Error: Expected " + topology.getNumCells() + " cells for a " + topology + " grid");
+    }
+
+    /**
+     * Searches the loaded grid in runs of growing node budgets, each after the first breaking ties at random.
+     * A run that gives up leaves the search arrays as loaded, so the next starts from the same grid.
+     * @return the number of solutions, at most limit, or -1 if the stop condition ended the search first
+     */
+    private int searchWithRestarts(int limit) {
+        random = RANDOM_SEED;
+        for (int run = 1; ; run++) {
+            start(limit, RESTART_NODES * luby(run));
+            randomTies = run > 1;
+            search();
+            if(!gaveUp || stopped)
+                break;
+        }
+        randomTies = false;
+        return gaveUp ? -1 : numSolutions;
+    }
+
+    /**
+     * Returns the i'th term, counting from 1, of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8...
+     */
+    private static long luby(int i) {
+        int k = 1;
+        while((1 << k) - 1 < i) {
+            k++;
+        }
+        return i == (1 << k) - 1 ? 1L << (k - 1) : luby(i - (1 << (k - 1)) + 1);
+    }
+
+    /**
+     * Sets a condition polled every few hundred nodes of each search, e.g. that another thread already found
+     * enough solutions; once it returns true the search gives up as if it had run out of nodes.
+     * @param stopCondition - the condition, or null to search until done
+     */
+    public void setStopCondition(BooleanSupplier stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+
+    private void start(int limit, long maxNodes) {
+        // A search stops once it finds 'limit' solutions, which it can only check after finding one
+        if(limit < 1)
+            throw new IllegalArgumentException("Error: Solution limit must be at least 1, not " + limit);
+        this.numSolutions = 0;
+        this.trailSize = 0;
+        this.limit = limit;
+        this.numNodes = 0;
+        this.maxNodes = maxNodes;
+        this.gaveUp = false;
+        this.stopped = false;
+    }
+
+    /**
+     * Copies the first solution found by the last search into dest, indexed as in Topology.
+     * Only meaningful if that search found a solution.
+     */
+    public void getSolution(int[] dest) {
+        System.arraycopy(solution, 0, dest, 0, solution.length);
+    }
+
+    /**
+     * Copies the grid's state into the search arrays.
+     * @return false if the determined values already conflict
+     */
+    private boolean load(Grid grid) {
+        reset(grid.getTopology());
+        for (int i = 0; i < values.length; i++) {
+            if(!loadCell(i, grid.getValue(i), grid.getCandidates(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean load(Topology topology, int[] values, int[] candidates) {
+        reset(topology);
+        for (int i = 0; i < values.length; i++) {
+            int val = values[i];
+            if(val < 0 || val > topology.getSize())
+                throw new IllegalArgumentException("Error: Invalid value " + val + " for cell " + i);
+            if(!loadCell(i, val, candidates == null ? allValues : candidates[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private void reset(Topology topology) {
+        if(topology != this.topology)
+            allocate(topology);
+
+        for (int i = 0; i < rowUsed.length; i++) {
+            rowUsed[i] = 0;
+            colUsed[i] = 0;
+            blkUsed[i] = 0;
+        }
+    }
+
+    /**
+     * @return false if the value conflicts with one already loaded
+     */
+    private boolean loadCell(int i, int val, int candidates) {
+        values[i] = val;
+        if(val == 0) {
+            allowed[i] = candidates;
+        } else {
+            int bit = 1 << val;
+            if(((rowUsed[rowOf[i]] | colUsed[colOf[i]] | blkUsed[blkOf[i]]) & bit) != 0)
+                return false;
+            place(i, bit);
+        }
+        return true;
+    }
+
+    private void allocate(Topology topology) {
+        this.topology = topology;
+        rowOf = topology.getRowOf();
+        colOf = topology.getColOf();
+        blkOf = topology.getBlockOf();
+        units = topology.getUnits();
+        intersectionCells = topology.getIntersectionCells();
+        intersectionRestOfLine = topology.getIntersectionRestOfLine();
+        intersectionRestOfBlock = topology.getIntersectionRestOfBlock();
+        allValues = topology.getAllValues();
+        values = new int[topology.getNumCells()];
+        allowed = new int[topology.getNumCells()];
+        remaining = new int[topology.getNumCells()];
+        // Each entry removes at least one value of a cell, and is undone before the cell's value is removed again
+        trail = new int[2 * topology.getNumCells() * topology.getSize()];
+        solution = new int[topology.getNumCells()];
+        rowUsed = new int[topology.getSize()];
+        colUsed = new int[topology.getSize()];
+        blkUsed = new int[topology.getSize()];
+    }
+
+    /**
+     * @return true once 'limit' solutions have been found or the search gives up, so the whole search can unwind
+     */
+    private boolean search() {
+        if(++numNodes > maxNodes) {
+            gaveUp = true;
+            return true;
+        }
+        if((numNodes & (POLL_INTERVAL - 1)) == 0 && stopCondition != null && stopCondition.getAsBoolean()) {
+            gaveUp = true;
+            stopped = true;
+            return true;
+        }
+
+        int bestCell = -1;
+        int bestMask = 0;
+        int bestCount = Integer.MAX_VALUE;
+        // Cells tied at bestCount so far, when ties are broken at random
+        int numTied = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if(values[i] != 0) {
+                remaining[i] = 0;
+                continue;
+            }
+
+            int mask = allowed[i] & ~(rowUsed[rowOf[i]] | colUsed[colOf[i]] | blkUsed[blkOf[i]]);
+            remaining[i] = mask;
+            int count = Integer.bitCount(mask);
+            if(count == 0)
+                return false;
+            if(count < bestCount) {
+                bestCell = i;
+                bestMask = mask;
+                bestCount = count;
+                numTied = 1;
+                if(count == 1)
+                    break;
+            } else if(randomTies && count == bestCount && nextRandom(++numTied) == 0) {
+                // Each of the tied cells ends up chosen with equal chance
+                bestCell = i;
+                bestMask = mask;
+            }
+        }
+
+        // Every cell is determined, so this is a solution
+        if(bestCell == -1) {
+            if(numSolutions == 0)
+                System.arraycopy(values, 0, solution, 0, values.length);
+            numSolutions++;
+            return numSolutions >= limit;
+        }
+
+        // With no cell down to one value, every cell was scanned, so count the places of each value per unit.
+        // A value with fewer places than the best cell has values is branched on instead, over its places.
+        int bestUnit = -1;
+        int bestBit = 0;
+        if(bestCount > 1) {
+            for (int u = 0; u < units.length; u++) {
+                // Bit planes of each value's count of places: bit v of planes[k] is bit k of value v's count
+                int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, placed = 0;
+                for (int cell : units[u]) {
+                    int carry = remaining[cell];
+                    int next = c0 & carry; c0 ^= carry; carry = next;
+                    next = c1 & carry; c1 ^= carry; carry = next;
+                    next = c2 & carry; c2 ^= carry; carry = next;
+                    next = c3 & carry; c3 ^= carry; carry = next;
+                    c4 ^= carry;
+                    placed |= 1 << values[cell];
+                }
+                // Bit 0 of placed is set by undetermined cells, and allValues leaves it out
+                if((allValues & ~placed & ~(c0 | c1 | c2 | c3 | c4)) != 0)
+                    return false;
+
+                for (int count = 1; count < bestCount; count++) {
+                    int withCount = ((count & 1) != 0 ? c0 : ~c0) & ((count & 2) != 0 ? c1 : ~c1)
+                                    & ((count & 4) != 0 ? c2 : ~c2) & ((count & 8) != 0 ? c3 : ~c3)
+                                    & ((count & 16) != 0 ? c4 : ~c4) & allValues;
+                    if(withCount != 0) {
+                        bestUnit = u;
+                        bestBit = withCount & -withCount;
+                        bestCount = count;
+                        break;
+                    }
+                }
+                if(bestCount == 1)
+                    break;
+            }
+        }
+
+        // Before branching on two or more choices, remove what box-line reductions can from this subtree
+        if(bestCount > 1) {
+            int mark = trailSize;
+            if(reduceIntersections()) {
+                boolean done = search();
+                undo(mark);
+                return done;
+            }
+        }
+
+        if(bestUnit >= 0) {
+            // The value's places, as positions in the unit, since the search below overwrites remaining
+            int[] unit = units[bestUnit];
+            int positions = 0;
+            for (int pos = 0; pos < unit.length; pos++) {
+                if((remaining[unit[pos]] & bestBit) != 0)
+                    positions |= 1 << pos;
+            }
+            for (; positions != 0; positions &= positions - 1) {
+                if(tryValue(unit[Integer.numberOfTrailingZeros(positions)], bestBit))
+                    return true;
+            }
+            return false;
+        }
+
+        // Try the values from a random one upwards, wrapping around
+        int low = 0;
+        if(randomTies && bestCount > 1) {
+            int start = bestMask;
+            for (int skip = nextRandom(bestCount); skip > 0; skip--) {
+                start &= start - 1;
+            }
+            low = bestMask & ~start;
+            bestMask = start;
+        }
+        while(bestMask != 0) {
+            if(tryValue(bestCell, bestMask & -bestMask))
+                return true;
+            bestMask &= bestMask - 1;
+        }
+        while(low != 0) {
+            if(tryValue(bestCell, low & -low))
+                return true;
+            low &= low - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a random number from 0 to bound - 1
+     */
+    private int nextRandom(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 33) % bound);
+    }
+
+    /**
+     * For each box-line intersection, removes the values the block can only hold in the intersection from the
+     * rest of the line, and the values the line can only hold in the intersection from the rest of the block.
+     * Reads and updates remaining, which must be current; the removals are recorded on the trail.
+     * @return true if any value was removed
+     */
+    private boolean reduceIntersections() {
+        boolean reduced = false;
+        for (int k = 0; k < intersectionCells.length; k++) {
+            int shared = 0, restOfBlock = 0, restOfLine = 0;
+            for (int cell : intersectionCells[k]) {
+                shared |= remaining[cell];
+            }
+            for (int cell : intersectionRestOfBlock[k]) {
+                restOfBlock |= remaining[cell];
+            }
+            for (int cell : intersectionRestOfLine[k]) {
+                restOfLine |= remaining[cell];
+            }
+
+            int pointing = shared & ~restOfBlock & restOfLine;
+            if(pointing != 0)
+                reduced |= removeAllowed(intersectionRestOfLine[k], pointing);
+            int claiming = shared & ~restOfLine & restOfBlock;
+            if(claiming != 0)
+                reduced |= removeAllowed(intersectionRestOfBlock[k], claiming);
+        }
+        return reduced;
+    }
+
+    private boolean removeAllowed(int[] cells, int vals) {
+        boolean removed = false;
+        for (int cell : cells) {
+            if((remaining[cell] & vals) != 0) {
+                trail[trailSize++] = cell;
+                trail[trailSize++] = allowed[cell];
+                allowed[cell] &= ~vals;
+                remaining[cell] &= ~vals;
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Restores the allowed values removed since the trail was at mark
+     */
+    private void undo(int mark) {
+        while(trailSize > mark) {
+            trailSize -= 2;
+            allowed[trail[trailSize]] = trail[trailSize + 1];
+        }
+    }
+
+    /**
+     * Determines the cell as the value of bit and searches on, undoing it afterwards
+     * @return true once the whole search can unwind
+     */
+    private boolean tryValue(int cell, int bit) {
+        place(cell, bit);
+        values[cell] = Integer.numberOfTrailingZeros(bit);
+        boolean done = search();
+        values[cell] = 0;
+        unplace(cell, bit);
+        return done;
+    }
+
+
+    private void place(int cell, int bit) {
+        rowUsed[rowOf[cell]] |= bit;
+        colUsed[colOf[cell]] |= bit;
+        blkUsed[blkOf[cell]] |= bit;
+    }
+
+    private void unplace(int cell, int bit) {
+        rowUsed[rowOf[cell]] &= ~bit;
+        colUsed[colOf[cell]] &= ~bit;
+        blkUsed[blkOf[cell]] &= ~bit;
+    }
+}
@@ -0,0 +1,50 @@
+package com.cs261a.sudoku.engine;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Solver;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.trace.StepListener;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the technique pipeline as far as it goes, then finishes the grid with a backtracking search.
+ * Any puzzle with a solution gets solved; only puzzles with no solution throw: BadTechniqueException if a technique
+ * runs into a contradiction, or InsufficientTechniquesException if the search finds no solution.
+ */
+public class HybridEngine implements SolvingEngine {
+
+    private final TechniqueEngine techniqueEngine;
+
+    /**
+     * Creates an engine whose techniques apply one finding per step
+     */
+    public HybridEngine() {
+        this(false);
+    }
+
+    /**
+     * @param applyAll - if true, each technique pass applies every finding of the technique
+     */
+    public HybridEngine(boolean applyAll) {
+        this.techniqueEngine = new TechniqueEngine(applyAll);
+    }
+
+    @Override
+    public void solve(Grid grid, StepListener listener) throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException {
+        solve(grid, listener, null);
+    }
+
+    @Override
+    public void solve(Grid grid, StepListener listener, BooleanSupplier stopCondition)
+            throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException {
+        if(techniqueEngine.applyTechniques(grid, listener, stopCondition))
+            return;
+
+        // A search per solve keeps this engine safe to share between threads
+        BacktrackingSearch search = new BacktrackingSearch();
+        search.setStopCondition(stopCondition);
+        if(!search.solve(grid))
+            throw new Solver.InsufficientTechniquesException(grid);
+    }
+}
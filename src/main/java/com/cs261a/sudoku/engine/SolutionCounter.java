@@ -0,0 +1,254 @@
+package com.cs261a.sudoku.engine;
+
+import com.cs261a.sudoku.BatchSolver;
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Topology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts solutions up to a limit, typically 2 to check that a puzzle has exactly one.
+ * Each count starts as a single BacktrackingSearch on the calling thread. Only if that search visits more than
+ * SPLIT_NODES nodes is the puzzle split on the branches of its cell with the fewest possible values, and the
+ * branches counted as tasks in a work stealing pool. A branch is split again if its search gives up too, with
+ * four times the budget at each level, unless its worker already has tasks queued for others to steal. A split
+ * throws away the nodes already searched, up to about as many again as the search needs, so with a pool of
+ * one thread puzzles are never split.
+ * The tasks share one running total, and stop (checking every few hundred nodes) as soon as it reaches the limit.
+ * Thread safe: each thread uses its own search.
+ */
+public class SolutionCounter {
+
+    // Nodes a search may visit before its puzzle is split. Most 9x9 puzzles need a few hundred.
+    public static final long SPLIT_NODES = 1 << 12;
+
+    // Queued tasks beyond which a worker's branches are searched to the end rather than split further
+    private static final int MAX_SURPLUS_TASKS = 2;
+
+    private final ForkJoinPool pool;
+
+    private final ThreadLocal<BacktrackingSearch> searches = ThreadLocal.withInitial(() -> new BacktrackingSearch());
+
+    /**
+     * Creates a counter that splits hard puzzles across the common pool
+     */
+    public SolutionCounter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SolutionCounter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Counts the solutions of the grid, consistent with its possible values, stopping as soon as 'limit' are found.
+     * The grid is unchanged.
+     * @return the number of solutions, at most limit
+     * @throws IllegalArgumentException if limit is less than 1
+     */
+    public int countSolutions(Grid grid, int limit) {
+        Topology topology = grid.getTopology();
+        int[] values = new int[topology.getNumCells()];
+        int[] candidates = new int[topology.getNumCells()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = grid.getValue(i);
+            candidates[i] = grid.getCandidates(i);
+        }
+        return countSolutions(topology, values, candidates, limit);
+    }
+
+    /**
+     * Returns true if the grid has exactly one solution
+     */
+    public boolean hasUniqueSolution(Grid grid) {
+        return countSolutions(grid, 2) == 1;
+    }
+
+    /**
+     * Counts the solutions of a puzzle given as values (0 for empty cells) and the possible values of each empty
+     * cell (or null to allow any), stopping as soon as 'limit' are found. The arrays are unchanged.
+     * @return the number of solutions, at most limit
+     * @throws IllegalArgumentException if limit is less than 1
+     */
+    public int countSolutions(Topology topology, int[] values, int[] candidates, int limit) {
+        if(limit < 1)
+            throw new IllegalArgumentException("Error: Solution limit must be at least 1, not " + limit);
+        long maxNodes = pool.getParallelism() > 1 ? SPLIT_NODES : Long.MAX_VALUE;
+        int count = searches.get().countSolutions(topology, values, candidates, limit, maxNodes);
+        if(count >= 0)
+            return count;
+
+        AtomicInteger numFound = new AtomicInteger();
+        List<CountTask> branches = split(topology, values, candidates, limit, numFound, nextBudget(maxNodes));
+        if(ForkJoinTask.getPool() == pool) {
+            // Already one of the pool's workers, e.g. counting a batch in parallel, so fork from here
+            ForkJoinTask.invokeAll(branches);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(branches);
+                }
+            });
+        }
+        return Math.min(numFound.get(), limit);
+    }
+
+    private static long nextBudget(long maxNodes) {
+        return maxNodes > Long.MAX_VALUE / 4 ? Long.MAX_VALUE : 4 * maxNodes;
+    }
+
+    /**
+     * Returns a task per possible value of the undetermined cell with the fewest, two or more, possible values
+     * @param maxNodes - the nodes each task may search before splitting again
+     */
+    private List<CountTask> split(Topology topology, int[] values, int[] candidates, int limit, AtomicInteger numFound,
+                                  long maxNodes) {
+        int size = topology.getSize();
+        int[] rowOf = topology.getRowOf();
+        int[] colOf = topology.getColOf();
+        int[] blockOf = topology.getBlockOf();
+        int[] rowUsed = new int[size];
+        int[] colUsed = new int[size];
+        int[] blkUsed = new int[size];
+        for (int i = 0; i < values.length; i++) {
+            int bit = 1 << values[i];
+            rowUsed[rowOf[i]] |= bit;
+            colUsed[colOf[i]] |= bit;
+            blkUsed[blockOf[i]] |= bit;
+        }
+
+        int bestCell = -1;
+        int bestMask = 0;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < values.length; i++) {
+            if(values[i] != 0)
+                continue;
+            int allowed = candidates == null ? topology.getAllValues() : candidates[i];
+            int mask = allowed & ~(rowUsed[rowOf[i]] | colUsed[colOf[i]] | blkUsed[blockOf[i]]);
+            int count = Integer.bitCount(mask);
+            if(count == 0)
+                return new ArrayList<CountTask>();
+            if(count > 1 && count < bestCount) {
+                bestCell = i;
+                bestMask = mask;
+                bestCount = count;
+            }
+        }
+
+        List<CountTask> branches = new ArrayList<CountTask>();
+        if(bestCell == -1) {
+            // Every undetermined cell has one value left, so the search can't branch and finishes quickly
+            branches.add(new CountTask(topology, values, candidates, limit, numFound, Long.MAX_VALUE));
+            return branches;
+        }
+        for (; bestMask != 0; bestMask &= bestMask - 1) {
+            int[] branchValues = values.clone();
+            branchValues[bestCell] = Integer.numberOfTrailingZeros(bestMask);
+            branches.add(new CountTask(topology, branchValues, candidates, limit, numFound, maxNodes));
+        }
+        return branches;
+    }
+
+    /**
+     * Counts the solutions of one branch, adding them to the shared total, and splits the branch further if its
+     * search gives up
+     */
+    private class CountTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Topology topology;
+        private final int[] values;
+        // Shared by all tasks: only the values of cells that are empty in values are read
+        private final int[] candidates;
+        private final int limit;
+        private final AtomicInteger numFound;
+        private final long maxNodes;
+
+        CountTask(Topology topology, int[] values, int[] candidates, int limit, AtomicInteger numFound, long maxNodes) {
+            this.topology = topology;
+            this.values = values;
+            this.candidates = candidates;
+            this.limit = limit;
+            this.numFound = numFound;
+            this.maxNodes = maxNodes;
+        }
+
+        @Override
+        protected void compute() {
+            int numLeft = limit - numFound.get();
+            if(numLeft <= 0)
+                return;
+
+            long budget = getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS ? Long.MAX_VALUE : maxNodes;
+            BacktrackingSearch search = searches.get();
+            // Stop early once other branches have found enough solutions between them
+            search.setStopCondition(() -> numFound.get() >= limit);
+            int count;
+            try {
+                count = search.countSolutions(topology, values, candidates, numLeft, budget);
+            } finally {
+                search.setStopCondition(null);
+            }
+            if(count >= 0) {
+                numFound.addAndGet(count);
+                return;
+            }
+            if(numFound.get() >= limit)
+                return;
+            invokeAll(split(topology, values, candidates, limit, numFound, nextBudget(maxNodes)));
+        }
+    }
+
+    /**
+     * Usage: SolutionCounter [-limit n] puzzleFile
+     * Prints "puzzle count" for each puzzle line, counting up to the limit (default 2), or "line invalid" for a
+     * line that is not a puzzle, then how many puzzles had no solution, exactly one, and more than one, and how
+     * many lines were invalid.
+     */
+    public static void main(String args[]) throws IOException {
+        int limit = 2;
+        int arg = 0;
+        if(args.length > 1 && args[0].equals("-limit")) {
+            limit = Integer.parseInt(args[1]);
+            arg = 2;
+        }
+        if(arg >= args.length || args[arg].startsWith("-") || limit < 1) {
+            System.err.println("Usage: SolutionCounter [-limit n] puzzleFile");
+            System.exit(1);
+        }
+
+        SolutionCounter counter = new SolutionCounter();
+        long[] numWithCount = new long[3];
+        long numInvalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[arg]), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.isEmpty())
+                    continue;
+                int count;
+                try {
+                    count = counter.countSolutions(new Grid(BatchSolver.parsePuzzle(line)), limit);
+                } catch (IllegalArgumentException e) {
+                    numInvalid++;
+                    System.out.println(line + " " + BatchSolver.INVALID_RESULT);
+                    continue;
+                }
+                numWithCount[Math.min(count, 2)]++;
+                System.out.println(line + " " + count);
+            }
+        }
+        System.err.println(String.format("%d with no solution, %d unique, %d with more than one, %d invalid",
+                numWithCount[0], numWithCount[1], numWithCount[2], numInvalid));
+    }
+}
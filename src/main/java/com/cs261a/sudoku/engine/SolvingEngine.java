@@ -0,0 +1,37 @@
+package com.cs261a.sudoku.engine;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Solver;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.trace.StepListener;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A strategy for completing a Sudoku grid, plugged into Solver.
+ */
+public interface SolvingEngine {
+
+    /**
+     * Solves the grid in place.
+     * If an exception is thrown, the grid is left in the state the engine reached.
+     * @param listener - told about each technique applied, in order
+     * @throws Solver.InsufficientTechniquesException if the engine cannot complete the grid
+     * @throws Technique.BadTechniqueException if a technique leads to an invalid grid
+     */
+    void solve(Grid grid, StepListener listener) throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException;
+
+    /**
+     * Solves the grid in place, giving up as soon as the stop condition returns true, e.g. once a deadline has
+     * passed. The engines here check it between technique steps and every few hundred search nodes; this default
+     * only checks it before starting.
+     * @param stopCondition - the condition, or null to solve until done
+     * @throws CancellationException if the stop condition ended the solve, leaving the grid as far as it got
+     */
+    default void solve(Grid grid, StepListener listener, BooleanSupplier stopCondition)
+            throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException {
+        TechniqueEngine.checkStop(stopCondition);
+        solve(grid, listener);
+    }
+}
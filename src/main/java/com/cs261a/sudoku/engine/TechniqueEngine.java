@@ -0,0 +1,181 @@
+package com.cs261a.sudoku.engine;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Solver;
+import com.cs261a.sudoku.metrics.TechniqueMetrics;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.techniques.TechniqueFactory;
+import com.cs261a.sudoku.techniques.TechniqueType;
+import com.cs261a.sudoku.trace.StepListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Solves using only the logical techniques, in TechniqueType order.
+ * After each step the search restarts from the first technique.
+ * A step is either the first finding of a technique (one step at a time, as a tutorial would show it)
+ * or, in apply all mode, every finding of that technique against the current grid.
+ * While TechniqueMetrics is enabled, each search and application is counted and timed.
+ */
+public class TechniqueEngine implements SolvingEngine {
+
+    private final boolean applyAll;
+
+    /**
+     * Creates an engine that applies one finding per step
+     */
+    public TechniqueEngine() {
+        this(false);
+    }
+
+    /**
+     * @param applyAll - if true, each pass applies every finding of the first applicable technique
+     */
+    public TechniqueEngine(boolean applyAll) {
+        this.applyAll = applyAll;
+    }
+
+    @Override
+    public void solve(Grid grid, StepListener listener) throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException {
+        solve(grid, listener, null);
+    }
+
+    @Override
+    public void solve(Grid grid, StepListener listener, BooleanSupplier stopCondition)
+            throws Solver.InsufficientTechniquesException, Technique.BadTechniqueException {
+        if(!applyTechniques(grid, listener, stopCondition))
+            throw new Solver.InsufficientTechniquesException(grid);
+    }
+
+    /**
+     * Applies techniques to the grid until it is complete, or until no technique applies.
+     * @param listener - told about each technique applied, in order
+     * @return true if the grid is complete, false if the techniques got stuck
+     */
+    public boolean applyTechniques(Grid grid, StepListener listener) throws Technique.BadTechniqueException {
+        return applyTechniques(grid, listener, null);
+    }
+
+    /**
+     * Like applyTechniques(grid, listener), checking the stop condition before each step.
+     * @param stopCondition - the condition, or null to apply techniques until done
+     * @throws CancellationException if the stop condition returned true, leaving the grid as far as it got
+     */
+    public boolean applyTechniques(Grid grid, StepListener listener, BooleanSupplier stopCondition)
+            throws Technique.BadTechniqueException {
+        TechniqueMetrics metrics = TechniqueMetrics.INSTANCE.isEnabled() ? TechniqueMetrics.INSTANCE : null;
+        if(applyAll)
+            return applyAllTechniques(grid, listener, stopCondition, metrics);
+
+        while(!grid.isComplete()) {
+            checkStop(stopCondition);
+            TechniqueType techniqueType = TechniqueType.getFirst();
+            Technique technique = TechniqueFactory.getTechnique(techniqueType);
+            Finding finding;
+
+            // Go through techniques in order until we find one we can apply to our current game state.
+            // Stop if no techniques can be applied.
+            while((finding = find(technique, grid, metrics)) == null) {
+                techniqueType = techniqueType.next();
+                if (techniqueType == null) {
+                    return false;
+                } else {
+                    technique = TechniqueFactory.getTechnique(techniqueType);
+                }
+            }
+
+            // Apply the first applicable technique to the game board, reporting it as a step.
+            apply(technique, grid, finding, listener, metrics);
+        }
+        return true;
+    }
+
+    /**
+     * Like applyTechniques, but applies all findings of a technique in one pass before going back to the first
+     * technique. Findings made redundant by earlier ones in the same pass (e.g. the same cell found as a
+     * FullHouse of both its row and its block) are skipped.
+     */
+    private boolean applyAllTechniques(Grid grid, StepListener listener, BooleanSupplier stopCondition,
+                                       TechniqueMetrics metrics) throws Technique.BadTechniqueException {
+        List<Finding> findings = new ArrayList<Finding>();
+
+        while(!grid.isComplete()) {
+            checkStop(stopCondition);
+            TechniqueType techniqueType = TechniqueType.getFirst();
+            Technique technique = TechniqueFactory.getTechnique(techniqueType);
+
+            findings.clear();
+            while(findAll(technique, grid, findings, metrics) == 0) {
+                techniqueType = techniqueType.next();
+                if (techniqueType == null) {
+                    return false;
+                } else {
+                    technique = TechniqueFactory.getTechnique(techniqueType);
+                }
+            }
+
+            for (int i = 0; i < findings.size(); i++) {
+                Finding finding = findings.get(i);
+                if(finding.isApplicableTo(grid))
+                    apply(technique, grid, finding, listener, metrics);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws CancellationException if the stop condition is set and returns true
+     */
+    static void checkStop(BooleanSupplier stopCondition) {
+        if(stopCondition != null && stopCondition.getAsBoolean())
+            throw new CancellationException("Solve stopped before the grid was complete");
+    }
+
+    /**
+     * technique.find, counted and timed if metrics is not null
+     */
+    private static Finding find(Technique technique, Grid grid, TechniqueMetrics metrics)
+            throws Technique.BadTechniqueException {
+        if(metrics == null)
+            return technique.find(grid);
+
+        long start = System.nanoTime();
+        Finding finding = technique.find(grid);
+        metrics.recordFind(technique.getType(), finding != null, System.nanoTime() - start);
+        return finding;
+    }
+
+    /**
+     * technique.findAll, counted and timed if metrics is not null
+     */
+    private static int findAll(Technique technique, Grid grid, List<Finding> findings, TechniqueMetrics metrics)
+            throws Technique.BadTechniqueException {
+        if(metrics == null)
+            return technique.findAll(grid, findings);
+
+        long start = System.nanoTime();
+        int numFound = technique.findAll(grid, findings);
+        metrics.recordFind(technique.getType(), numFound > 0, System.nanoTime() - start);
+        return numFound;
+    }
+
+    /**
+     * technique.apply, counted and timed if metrics is not null
+     */
+    private static void apply(Technique technique, Grid grid, Finding finding, StepListener listener,
+                              TechniqueMetrics metrics) throws Technique.BadTechniqueException {
+        if(metrics == null) {
+            technique.apply(grid, finding, listener);
+            return;
+        }
+
+        int numEliminated = finding.getNumEliminations(grid);
+        long start = System.nanoTime();
+        technique.apply(grid, finding, listener);
+        metrics.recordApply(technique.getType(), finding.isPlacement(), numEliminated, System.nanoTime() - start);
+    }
+}
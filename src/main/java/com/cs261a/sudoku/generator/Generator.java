@@ -0,0 +1,388 @@
+package com.cs261a.sudoku.generator;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Pools;
+import com.cs261a.sudoku.Topology;
+import com.cs261a.sudoku.engine.BacktrackingSearch;
+import com.cs261a.sudoku.rating.Rater;
+import com.cs261a.sudoku.rating.Rating;
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Generates puzzles with exactly one solution. Each attempt fills a random solution grid, then removes clues
+ * in random order, keeping a clue if removing it would allow a second solution. The result is rated with
+ * the technique pipeline (see Rater) and kept if it passes the difficulty filter.
+ * Every search is given a budget of search nodes. Showing a clue is needed takes an exhaustive search, which on
+ * 25x25 grids can run for hours, so a clue the search can't settle in time is kept: the puzzle still has one
+ * solution, but may not be minimal. An attempt whose solution grid can't be completed in time is dropped, and
+ * the next attempt tried. A larger budget gives puzzles with fewer clues at the cost of slower attempts, as
+ * each clue may take up to the whole budget. The default is the square of the number of cells (6561 nodes for
+ * 9x9, 65536 for 16x16, 390625 for 25x25). That settles every clue of a typical 16x16 puzzle, but only about
+ * one in ten of a 25x25 one, which already takes minutes per puzzle; settling the rest takes seconds of search
+ * per clue, so pass a larger budget where minimal 25x25 puzzles are worth the wait.
+ * Attempt k of a seed always gives the same puzzle, and puzzles are returned in attempt order, so a seed gives
+ * the same puzzles whatever the number of threads. Attempts run in parallel on this generator's own pool,
+ * each worker thread with its own random number generator, search, and buffers.
+ */
+public class Generator {
+
+    // Most attempts run in parallel at a time, so results can be written while more are generated
+    private static final int MAX_WINDOW = 1 << 12;
+
+    private final Topology topology;
+    private final long maxSearchNodes;
+    private final ForkJoinPool pool;
+    private final Rater rater;
+    private final Predicate<Rating> filter;
+
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker());
+
+    /**
+     * Creates a generator of 9x9 puzzles of any difficulty, with one worker thread per available processor
+     */
+    public Generator() {
+        this(Topology.STANDARD, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * @param filter - which ratings to keep, or null to keep every puzzle
+     */
+    public Generator(Topology topology, int parallelism, Predicate<Rating> filter) {
+        this(topology, parallelism, filter, defaultMaxSearchNodes(topology));
+    }
+
+    /**
+     * @param filter - which ratings to keep, or null to keep every puzzle
+     * @param maxSearchNodes - most nodes a search may visit to complete a solution grid or to show a clue is needed
+     */
+    public Generator(Topology topology, int parallelism, Predicate<Rating> filter, long maxSearchNodes) {
+        this.topology = topology;
+        this.maxSearchNodes = maxSearchNodes;
+        this.pool = new ForkJoinPool(parallelism);
+        // Only rate(Grid) is used, on each worker thread, so the rater needs no pool or cache of its own
+        this.rater = new Rater(1, 0);
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the search node budget generators of the given shape use by default
+     */
+    public static long defaultMaxSearchNodes(Topology topology) {
+        return (long) topology.getNumCells() * topology.getNumCells();
+    }
+
+    /**
+     * Returns a filter keeping puzzles the techniques solve on their own, with the given technique the hardest used
+     */
+    public static Predicate<Rating> hardestTechnique(TechniqueType type) {
+        return rating -> !rating.isSearchUsed() && rating.getHardestTechnique() == type;
+    }
+
+    /**
+     * Returns a filter keeping puzzles the techniques can't finish, i.e. that need search
+     */
+    public static Predicate<Rating> searchNeeded() {
+        return rating -> rating.isSearchUsed();
+    }
+
+    /**
+     * Generates count puzzles from the seed. Doesn't return until it has them all, so the filter must
+     * accept some puzzles.
+     */
+    public List<GeneratedPuzzle> generate(long seed, int count) {
+        List<GeneratedPuzzle> puzzles = new ArrayList<GeneratedPuzzle>(count);
+        for (long attempt = 0; puzzles.size() < count; ) {
+            int window = window(count - puzzles.size(), Long.MAX_VALUE - attempt);
+            for (GeneratedPuzzle puzzle : generateAttempts(seed, attempt, window)) {
+                if(puzzles.size() < count)
+                    puzzles.add(puzzle);
+            }
+            attempt += window;
+        }
+        return puzzles;
+    }
+
+    /**
+     * Generates up to count puzzles from the seed, giving up after maxAttempts, and writes "puzzle rating" lines
+     * to out (see Rating.toString).
+     * @return the number of puzzles written
+     */
+    public long generate(long seed, long count, long maxAttempts, Writer out) throws IOException {
+        long numPuzzles = 0;
+        for (long attempt = 0; numPuzzles < count && attempt < maxAttempts; ) {
+            int window = window(count - numPuzzles, maxAttempts - attempt);
+            for (GeneratedPuzzle puzzle : generateAttempts(seed, attempt, window)) {
+                if(numPuzzles == count)
+                    break;
+                out.write(puzzle.toString());
+                out.write('\n');
+                numPuzzles++;
+            }
+            attempt += window;
+        }
+        out.flush();
+        return numPuzzles;
+    }
+
+    /**
+     * Returns how many attempts to run next: enough to keep every worker busy, but no more than are
+     * likely needed while the filter keeps most puzzles
+     */
+    private int window(long numNeeded, long attemptsLeft) {
+        long window = Math.min(MAX_WINDOW, Math.max(numNeeded, 4 * pool.getParallelism()));
+        return (int) Math.min(window, attemptsLeft);
+    }
+
+    /**
+     * Runs numAttempts attempts starting from firstAttempt in parallel, returning the puzzles kept in attempt order
+     */
+    public List<GeneratedPuzzle> generateAttempts(long seed, long firstAttempt, int numAttempts) {
+        return Pools.invoke(pool, () -> LongStream.range(firstAttempt, firstAttempt + numAttempts)
+                                                  .parallel()
+                                                  .mapToObj(attempt -> workers.get().generate(seed, attempt))
+                                                  .filter(puzzle -> puzzle != null)
+                                                  .collect(Collectors.toList()));
+    }
+
+    /**
+     * Shuts down this generator's pool once the attempts running on it finish; no more can be started
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns the random seed of an attempt, spreading nearby seeds and attempts apart (the SplitMix64 finalizer)
+     */
+    private static long attemptSeed(long seed, long attempt) {
+        long z = seed + attempt * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The state of one worker thread, reused from attempt to attempt
+     */
+    private class Worker {
+        private final Random random = new Random();
+        private final BacktrackingSearch search = new BacktrackingSearch();
+        private final int allValues = topology.getAllValues();
+
+        // Cells indexed as in Topology
+        private final int[] solution = new int[topology.getNumCells()];
+        private final int[] values = new int[topology.getNumCells()];
+        private final int[] candidates = new int[topology.getNumCells()];
+        private final int[] order = new int[topology.getNumCells()];
+
+        private final int[] digits = new int[topology.getSize()];
+        private final int[][] board = new int[topology.getSize()][topology.getSize()];
+
+        /**
+         * @return the attempt's puzzle, or null if the filter rejected it (or no solution grid was found in time)
+         */
+        GeneratedPuzzle generate(long seed, long attempt) {
+            random.setSeed(attemptSeed(seed, attempt));
+            if(!fillSolution())
+                return null;
+            removeClues();
+
+            int size = topology.getSize();
+            for (int i = 0; i < values.length; i++) {
+                board[i / size][i % size] = values[i];
+            }
+            Rating rating = rater.rate(new Grid(board));
+            if(filter != null && !filter.test(rating))
+                return null;
+            return new GeneratedPuzzle(toPuzzleString(values), toPuzzleString(solution), rating);
+        }
+
+        /**
+         * Fills the diagonal blocks, which don't share a row or column, with random permutations,
+         * then completes the grid with search.
+         * @return false if the search could not complete the grid within maxSearchNodes
+         */
+        private boolean fillSolution() {
+            int size = topology.getSize();
+            int boxSize = topology.getBoxSize();
+            int[][] units = topology.getUnits();
+
+            Arrays.fill(values, 0);
+            for (int i = 0; i < size; i++) {
+                digits[i] = i + 1;
+            }
+            for (int k = 0; k < boxSize; k++) {
+                shuffle(digits);
+                int[] block = units[2*size + boxSize*k + k];
+                for (int i = 0; i < size; i++) {
+                    values[block[i]] = digits[i];
+                }
+            }
+
+            if(search.countSolutions(topology, values, null, 1, maxSearchNodes) != 1)
+                return false;
+            search.getSolution(solution);
+            return true;
+        }
+
+        /**
+         * Removes clues from the solution in random order, leaving a puzzle that has only that solution but
+         * loses it if any further clue is removed, except clues the search could not settle within
+         * maxSearchNodes
+         */
+        private void removeClues() {
+            System.arraycopy(solution, 0, values, 0, values.length);
+            Arrays.fill(candidates, allValues);
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            shuffle(order);
+
+            int[][] peers = topology.getPeers();
+            for (int cell : order) {
+                int val = values[cell];
+                values[cell] = 0;
+
+                // While the cell's peers hold every other value, it can only be val, so the clue can go
+                int peerVals = 0;
+                for (int peer : peers[cell]) {
+                    peerVals |= 1 << values[peer];
+                }
+                int otherVals = allValues & ~(1 << val);
+                if((otherVals & ~peerVals) == 0)
+                    continue;
+
+                // The puzzle is still unique exactly when no solution has another value in this cell,
+                // which takes a single failed search to show rather than searching for two solutions.
+                // A search that gives up (-1) keeps the clue too.
+                candidates[cell] = otherVals;
+                if(search.countSolutions(topology, values, candidates, 1, maxSearchNodes) != 0)
+                    values[cell] = val;
+                candidates[cell] = allValues;
+            }
+        }
+
+        private void shuffle(int[] array) {
+            for (int i = array.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = array[i];
+                array[i] = array[j];
+                array[j] = swap;
+            }
+        }
+
+        private String toPuzzleString(int[] cells) {
+            char[] chars = new char[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                chars[i] = Grid.valueToChar(cells[i]);
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * A generated puzzle, its solution, and its rating.
+     */
+    public static final class GeneratedPuzzle {
+        private final String puzzle;
+        private final String solution;
+        private final Rating rating;
+
+        GeneratedPuzzle(String puzzle, String solution, Rating rating) {
+            this.puzzle = puzzle;
+            this.solution = solution;
+            this.rating = rating;
+        }
+
+        /**
+         * Returns the puzzle as a line, with '.' for empty cells
+         */
+        public String getPuzzle() { return puzzle; }
+
+        public String getSolution() { return solution; }
+
+        public Rating getRating() { return rating; }
+
+        /**
+         * Returns the puzzle line and its rating, as Rater writes them
+         */
+        @Override
+        public String toString() {
+            return puzzle + " " + rating;
+        }
+    }
+
+    /**
+     * Usage: Generator [-threads n] [-seed s] [-size n] [-hardest technique|search] [-attempts n] [-nodes n] count [outputFile]
+     * Writes count "puzzle hardestTechnique steps logic|search" lines to outputFile, or System.out if not given.
+     * -size gives the number of rows, e.g. 16 for 16x16 puzzles (default 9).
+     * -hardest keeps only puzzles the techniques solve with the named TechniqueType (e.g. NakedPair) as the
+     * hardest used, or with 'search' only puzzles they can't finish. -attempts gives up after that many attempts.
+     * -nodes sets the search node budget (see defaultMaxSearchNodes).
+     * Without -seed a random seed is used; it is printed to System.err, with the count and rate, so the run
+     * can be repeated.
+     */
+    public static void main(String args[]) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long seed = new Random().nextLong();
+        Topology topology = Topology.STANDARD;
+        Predicate<Rating> filter = null;
+        long maxAttempts = Long.MAX_VALUE;
+        long maxSearchNodes = 0;
+        int arg = 0;
+        for (; arg + 1 < args.length && args[arg].startsWith("-"); arg += 2) {
+            if(args[arg].equals("-threads")) {
+                parallelism = Integer.parseInt(args[arg + 1]);
+            } else if(args[arg].equals("-seed")) {
+                seed = Long.parseLong(args[arg + 1]);
+            } else if(args[arg].equals("-size")) {
+                topology = Topology.forSize(Integer.parseInt(args[arg + 1]));
+            } else if(args[arg].equals("-hardest")) {
+                filter = args[arg + 1].equals("search") ? searchNeeded()
+                                                        : hardestTechnique(TechniqueType.valueOf(args[arg + 1]));
+            } else if(args[arg].equals("-attempts")) {
+                maxAttempts = Long.parseLong(args[arg + 1]);
+            } else if(args[arg].equals("-nodes")) {
+                maxSearchNodes = Long.parseLong(args[arg + 1]);
+            } else {
+                arg = args.length;
+            }
+        }
+        if(arg >= args.length || args[arg].startsWith("-")) {
+            System.err.println("Usage: Generator [-threads n] [-seed s] [-size n] [-hardest technique|search] [-attempts n] [-nodes n] count [outputFile]");
+            System.exit(1);
+        }
+
+        Generator generator = new Generator(topology, parallelism, filter,
+                                            maxSearchNodes > 0 ? maxSearchNodes : defaultMaxSearchNodes(topology));
+        long count = Long.parseLong(args[arg]);
+        long start = System.nanoTime();
+        long numPuzzles;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                arg + 1 < args.length ? Files.newOutputStream(Paths.get(args[arg + 1])) : System.out,
+                StandardCharsets.US_ASCII), 1 << 16)) {
+            numPuzzles = generator.generate(seed, count, maxAttempts, out);
+        } finally {
+            generator.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format("%d %s puzzles from seed %d in %.3f s (%.1f puzzles/s)",
+                numPuzzles, topology, seed, seconds, numPuzzles / seconds));
+    }
+}
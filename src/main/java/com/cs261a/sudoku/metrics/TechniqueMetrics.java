@@ -0,0 +1,286 @@
+package com.cs261a.sudoku.metrics;
+
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of how often each technique is searched for and applied, and how long that takes,
+ * plus totals over whole solves. Counters are striped (LongAdder), so solving threads don't contend on them.
+ * Recording is off unless enabled, with setEnabled or the system property sudoku.metrics=true;
+ * the engines then check one flag per solve and don't read the clock.
+ * One instance is shared by all engines and published over JMX by registerMBean.
+ */
+public final class TechniqueMetrics implements TechniqueMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.cs261a.sudoku:type=TechniqueMetrics";
+
+    private static final int NUM_TYPES = TechniqueType.values().length;
+
+    // After NUM_TYPES, which the constructor uses
+    public static final TechniqueMetrics INSTANCE = new TechniqueMetrics();
+
+    private volatile boolean enabled = Boolean.getBoolean("sudoku.metrics");
+
+    // Indexed by TechniqueType ordinal
+    private final LongAdder[] findCalls = newAdders(NUM_TYPES);
+    private final LongAdder[] hits = newAdders(NUM_TYPES);
+    private final LongAdder[] eliminations = newAdders(NUM_TYPES);
+    private final LongAdder[] placements = newAdders(NUM_TYPES);
+    private final LongAdder[] findNanos = newAdders(NUM_TYPES);
+    private final LongAdder[] applyNanos = newAdders(NUM_TYPES);
+
+    private final LongAdder solves = new LongAdder();
+    private final LongAdder unsolved = new LongAdder();
+    private final LongAdder steps = new LongAdder();
+    private final LongAccumulator maxSteps = new LongAccumulator(Math::max, 0);
+    private final LongAdder solveNanos = new LongAdder();
+    private final LongAccumulator maxSolveNanos = new LongAccumulator(Math::max, 0);
+
+    private TechniqueMetrics() {
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records one search for a technique.
+     * @param found - true if the search found at least one application
+     */
+    public void recordFind(TechniqueType type, boolean found, long nanos) {
+        int i = type.ordinal();
+        findCalls[i].increment();
+        if(found)
+            hits[i].increment();
+        findNanos[i].add(nanos);
+    }
+
+    /**
+     * Records one finding of a technique being applied.
+     * @param placement - true if the finding determined a cell
+     * @param numEliminated - the number of possible values the finding removed directly
+     */
+    public void recordApply(TechniqueType type, boolean placement, int numEliminated, long nanos) {
+        int i = type.ordinal();
+        if(placement)
+            placements[i].increment();
+        eliminations[i].add(numEliminated);
+        applyNanos[i].add(nanos);
+    }
+
+    /**
+     * Records one whole solve.
+     * @param numSteps - the number of technique steps applied during the solve
+     */
+    public void recordSolve(boolean solved, int numSteps, long nanos) {
+        solves.increment();
+        if(!solved)
+            unsolved.increment();
+        steps.add(numSteps);
+        maxSteps.accumulate(numSteps);
+        solveNanos.add(nanos);
+        maxSolveNanos.accumulate(nanos);
+    }
+
+    /**
+     * Returns a copy of the counters. Counters updated while the copy is made may be caught part way through
+     * a record call, so related counters can be off by the few records in flight.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < NUM_TYPES; i++) {
+            findCalls[i].reset();
+            hits[i].reset();
+            eliminations[i].reset();
+            placements[i].reset();
+            findNanos[i].reset();
+            applyNanos[i].reset();
+        }
+        solves.reset();
+        unsolved.reset();
+        steps.reset();
+        maxSteps.reset();
+        solveNanos.reset();
+        maxSolveNanos.reset();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server under OBJECT_NAME, if it isn't already
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(!server.isRegistered(name))
+                server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("ERROR: Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getFindCalls() { return byType(findCalls); }
+
+    @Override
+    public Map<String, Long> getHits() { return byType(hits); }
+
+    @Override
+    public Map<String, Long> getEliminations() { return byType(eliminations); }
+
+    @Override
+    public Map<String, Long> getPlacements() { return byType(placements); }
+
+    @Override
+    public Map<String, Long> getFindNanos() { return byType(findNanos); }
+
+    @Override
+    public Map<String, Long> getApplyNanos() { return byType(applyNanos); }
+
+    @Override
+    public long getSolves() { return solves.sum(); }
+
+    @Override
+    public long getUnsolved() { return unsolved.sum(); }
+
+    @Override
+    public long getSteps() { return steps.sum(); }
+
+    @Override
+    public long getMaxSteps() { return maxSteps.get(); }
+
+    @Override
+    public long getSolveNanos() { return solveNanos.sum(); }
+
+    @Override
+    public long getMaxSolveNanos() { return maxSolveNanos.get(); }
+
+    private static Map<String, Long> byType(LongAdder[] adders) {
+        Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (TechniqueType type : TechniqueType.values()) {
+            map.put(type.name(), adders[type.ordinal()].sum());
+        }
+        return map;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    /**
+     * An immutable copy of the counters at one point in time
+     */
+    public static final class Snapshot {
+        private final long[] findCalls;
+        private final long[] hits;
+        private final long[] eliminations;
+        private final long[] placements;
+        private final long[] findNanos;
+        private final long[] applyNanos;
+        private final long solves;
+        private final long unsolved;
+        private final long steps;
+        private final long maxSteps;
+        private final long solveNanos;
+        private final long maxSolveNanos;
+
+        private Snapshot(TechniqueMetrics metrics) {
+            findCalls = sums(metrics.findCalls);
+            hits = sums(metrics.hits);
+            eliminations = sums(metrics.eliminations);
+            placements = sums(metrics.placements);
+            findNanos = sums(metrics.findNanos);
+            applyNanos = sums(metrics.applyNanos);
+            solves = metrics.solves.sum();
+            unsolved = metrics.unsolved.sum();
+            steps = metrics.steps.sum();
+            maxSteps = metrics.maxSteps.get();
+            solveNanos = metrics.solveNanos.sum();
+            maxSolveNanos = metrics.maxSolveNanos.get();
+        }
+
+        public long getFindCalls(TechniqueType type) { return findCalls[type.ordinal()]; }
+
+        public long getHits(TechniqueType type) { return hits[type.ordinal()]; }
+
+        public long getEliminations(TechniqueType type) { return eliminations[type.ordinal()]; }
+
+        public long getPlacements(TechniqueType type) { return placements[type.ordinal()]; }
+
+        public long getFindNanos(TechniqueType type) { return findNanos[type.ordinal()]; }
+
+        public long getApplyNanos(TechniqueType type) { return applyNanos[type.ordinal()]; }
+
+        /**
+         * Returns the total time spent searching for and applying the technique
+         */
+        public long getNanos(TechniqueType type) { return findNanos[type.ordinal()] + applyNanos[type.ordinal()]; }
+
+        public long getSolves() { return solves; }
+
+        public long getUnsolved() { return unsolved; }
+
+        public long getSteps() { return steps; }
+
+        public long getMaxSteps() { return maxSteps; }
+
+        public long getSolveNanos() { return solveNanos; }
+
+        public long getMaxSolveNanos() { return maxSolveNanos; }
+
+        public double getStepsPerSolve() {
+            return solves == 0 ? 0 : (double) steps / solves;
+        }
+
+        public double getMicrosPerSolve() {
+            return solves == 0 ? 0 : solveNanos / 1e3 / solves;
+        }
+
+        /**
+         * Returns a table with a line per technique, followed by the solve totals
+         */
+        @Override
+        public String toString() {
+            StringBuilder str = new StringBuilder();
+            str.append(String.format("%-14s %12s %12s %12s %12s %12s %12s%n",
+                    "technique", "finds", "hits", "eliminated", "placed", "find ms", "apply ms"));
+            for (TechniqueType type : TechniqueType.values()) {
+                int i = type.ordinal();
+                str.append(String.format("%-14s %12d %12d %12d %12d %12.1f %12.1f%n", type.name(),
+                        findCalls[i], hits[i], eliminations[i], placements[i], findNanos[i] / 1e6, applyNanos[i] / 1e6));
+            }
+            str.append(String.format("%d solves, %d unsolved, %.1f steps/solve (max %d), %.1f us/solve (max %.1f)",
+                    solves, unsolved, getStepsPerSolve(), maxSteps, getMicrosPerSolve(), maxSolveNanos / 1e3));
+            return str.toString();
+        }
+    }
+}
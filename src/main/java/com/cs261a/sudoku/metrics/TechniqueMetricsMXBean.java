@@ -0,0 +1,39 @@
+package com.cs261a.sudoku.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of TechniqueMetrics. Per technique counters are keyed by TechniqueType name.
+ */
+public interface TechniqueMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getFindCalls();
+
+    Map<String, Long> getHits();
+
+    Map<String, Long> getEliminations();
+
+    Map<String, Long> getPlacements();
+
+    Map<String, Long> getFindNanos();
+
+    Map<String, Long> getApplyNanos();
+
+    long getSolves();
+
+    long getUnsolved();
+
+    long getSteps();
+
+    long getMaxSteps();
+
+    long getSolveNanos();
+
+    long getMaxSolveNanos();
+
+    void reset();
+}
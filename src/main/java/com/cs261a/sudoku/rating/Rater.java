@@ -0,0 +1,277 @@
+package com.cs261a.sudoku.rating;
+
+import com.cs261a.sudoku.BatchSolver;
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Pools;
+import com.cs261a.sudoku.engine.BacktrackingSearch;
+import com.cs261a.sudoku.engine.TechniqueEngine;
+import com.cs261a.sudoku.techniques.Technique;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Rates puzzles by solving them one technique step at a time, as a tutorial would, then counting the steps
+ * of each technique. If the techniques get stuck, backtracking search finishes the puzzle and the rating
+ * says so.
+ * Ratings are cached by puzzle key, so rating the same puzzle again is a map lookup. The cache is split into
+ * stripes, each locked on its own and evicting its least recently used ratings when full.
+ * Batches are rated in parallel on this rater's own pool, or on the calling thread by a rater of one thread,
+ * which has no pool. In a batch, a line that is not a puzzle, or a puzzle
+ * the rater fails on, gets Rating.invalid() and the rest of the batch is rated as usual.
+ */
+public class Rater {
+
+    public static final int DEFAULT_CACHE_SIZE = 1 << 20;
+
+    // Number of lines read, rated and written at a time, so huge files don't need to fit in memory
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private static final int NUM_STRIPES = 16;
+
+    // Null for a rater of one thread
+    private final ForkJoinPool pool;
+    private final TechniqueEngine engine = new TechniqueEngine();
+
+    private final CacheStripe[] stripes = new CacheStripe[NUM_STRIPES];
+    private final int maxCacheSize;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Creates a rater with one worker thread per available processor
+     */
+    public Rater() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public Rater(int parallelism) {
+        this(parallelism, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxCacheSize - ratings to cache, roughly: each stripe holds its share and evicts the least recently
+     *                     used when full. 0 caches nothing.
+     */
+    public Rater(int parallelism, int maxCacheSize) {
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.maxCacheSize = maxCacheSize;
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new CacheStripe((maxCacheSize + NUM_STRIPES - 1) / NUM_STRIPES);
+        }
+    }
+
+    /**
+     * Returns the key puzzles are cached by: the 81 cells (or 256 or 625 for larger grids) with '0' for empty ones.
+     * @throws IllegalArgumentException if the line is not a puzzle as read by BatchSolver.parsePuzzle
+     */
+    public static String puzzleKey(CharSequence puzzle) {
+        BatchSolver.parsePuzzle(puzzle);
+        return puzzle.toString().replace('.', '0');
+    }
+
+    /**
+     * Rates a puzzle line, from the cache if it has been rated before. Lines are 81 characters, or 256 or 625
+     * for 16x16 and 25x25 puzzles.
+     * @throws IllegalArgumentException if the line is not a puzzle as read by BatchSolver.parsePuzzle
+     */
+    public Rating rate(CharSequence puzzle) {
+        String key = puzzleKey(puzzle);
+        CacheStripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % NUM_STRIPES];
+        Rating rating;
+        synchronized (stripe) {
+            rating = stripe.get(key);
+        }
+        if(rating != null) {
+            cacheHits.increment();
+            return rating;
+        }
+
+        cacheMisses.increment();
+        rating = rate(new Grid(BatchSolver.parsePuzzle(key)));
+        if(maxCacheSize > 0) {
+            synchronized (stripe) {
+                stripe.put(key, rating);
+            }
+        }
+        return rating;
+    }
+
+    /**
+     * Rates a puzzle line, returning Rating.invalid() rather than throwing if it is not a puzzle or the rater
+     * fails on it
+     */
+    private Rating rateQuietly(CharSequence puzzle) {
+        try {
+            return rate(puzzle);
+        } catch (RuntimeException e) {
+            return Rating.invalid();
+        }
+    }
+
+    /**
+     * Rates the grid, solving it in place. The cache is not used.
+     */
+    public Rating rate(Grid grid) {
+        RatingListener listener = new RatingListener();
+        boolean searchUsed = false;
+        boolean solved;
+        try {
+            solved = engine.applyTechniques(grid, listener);
+            if(!solved) {
+                searchUsed = true;
+                solved = new BacktrackingSearch().solve(grid);
+            }
+        } catch (Technique.BadTechniqueException e) {
+            // A technique ran into a contradiction, such as a cell with no possible value left, so there is no solution
+            solved = false;
+        }
+        return new Rating(listener.counts, listener.numSteps, searchUsed, solved);
+    }
+
+    /**
+     * Rates every puzzle line in parallel, returning the ratings in the same order. A line that is not a puzzle,
+     * or a puzzle the rater fails on, gets Rating.invalid().
+     */
+    public List<Rating> rateAll(List<? extends CharSequence> puzzles) {
+        if(pool == null)
+            return puzzles.stream()
+                          .map(this::rateQuietly)
+                          .collect(Collectors.toList());
+        return Pools.invoke(pool, () -> puzzles.parallelStream()
+                                               .map(this::rateQuietly)
+                                               .collect(Collectors.toList()));
+    }
+
+    /**
+     * Reads puzzles from a file, one per line, and writes "puzzle rating" lines to out, in input order.
+     * Blank lines are skipped, and a line that is not a puzzle is written as "line invalid".
+     * @return the number of puzzles rated
+     */
+    public long rateFile(Path puzzleFile, Writer out) throws IOException {
+        long numPuzzles = 0;
+        try (BufferedReader reader = Files.newBufferedReader(puzzleFile, StandardCharsets.US_ASCII)) {
+            List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.isEmpty())
+                    continue;
+                chunk.add(line);
+                if(chunk.size() == CHUNK_SIZE) {
+                    numPuzzles += writeRatings(chunk, rateAll(chunk), out);
+                    chunk.clear();
+                }
+            }
+            numPuzzles += writeRatings(chunk, rateAll(chunk), out);
+        }
+        out.flush();
+        return numPuzzles;
+    }
+
+    private static int writeRatings(List<String> puzzles, List<Rating> ratings, Writer out) throws IOException {
+        for (int i = 0; i < puzzles.size(); i++) {
+            out.write(puzzles.get(i));
+            out.write(' ');
+            out.write(ratings.get(i).toString());
+            out.write('\n');
+        }
+        return puzzles.size();
+    }
+
+    /**
+     * Shuts down this rater's pool, if it has one, once the batches running on it finish; the rater can
+     * still rate single puzzles
+     */
+    public void shutdown() {
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public int getCacheSize() {
+        int size = 0;
+        for (CacheStripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public void clearCache() {
+        for (CacheStripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * One stripe of the cache: a map in access order that drops its least recently used rating when full
+     */
+    private static class CacheStripe extends LinkedHashMap<String, Rating> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        CacheStripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rating> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Usage: Rater [-threads n] puzzleFile [outputFile]
+     * Writes "puzzle hardestTechnique steps logic|search|unsolvable" per puzzle to outputFile, or System.out
+     * if not given. The count and cache statistics are printed to System.err.
+     */
+    public static void main(String args[]) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int arg = 0;
+        if(args.length > 1 && args[0].equals("-threads")) {
+            parallelism = Integer.parseInt(args[1]);
+            arg = 2;
+        }
+        if(arg >= args.length || args[arg].startsWith("-")) {
+            System.err.println("Usage: Rater [-threads n] puzzleFile [outputFile]");
+            System.exit(1);
+        }
+
+        Rater rater = new Rater(parallelism);
+        long start = System.nanoTime();
+        long numPuzzles;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                arg + 1 < args.length ? Files.newOutputStream(Paths.get(args[arg + 1])) : System.out,
+                StandardCharsets.US_ASCII), 1 << 16)) {
+            numPuzzles = rater.rateFile(Paths.get(args[arg]), out);
+        }
+        System.err.println(String.format("%d puzzles rated in %.3f s, %d cache hits",
+                numPuzzles, (System.nanoTime() - start) / 1e9, rater.getCacheHits()));
+    }
+}
@@ -0,0 +1,117 @@
+package com.cs261a.sudoku.rating;
+
+import com.cs261a.sudoku.techniques.TechniqueType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * An immutable difficulty rating of a puzzle: which techniques the step by step solve used and how often,
+ * and whether search had to finish it off.
+ */
+public final class Rating {
+
+    // Steps per technique, indexed by TechniqueType ordinal
+    private final int[] counts;
+    private final int numSteps;
+    private final boolean searchUsed;
+    private final boolean solved;
+    private final boolean invalid;
+
+    private static final Rating INVALID = new Rating(new int[TechniqueType.values().length], 0, false, false, true);
+
+    /**
+     * @param counts - the number of steps of each technique, indexed by TechniqueType ordinal
+     */
+    public Rating(int[] counts, int numSteps, boolean searchUsed, boolean solved) {
+        this(counts, numSteps, searchUsed, solved, false);
+    }
+
+    private Rating(int[] counts, int numSteps, boolean searchUsed, boolean solved, boolean invalid) {
+        this.counts = counts.clone();
+        this.numSteps = numSteps;
+        this.searchUsed = searchUsed;
+        this.solved = solved;
+        this.invalid = invalid;
+    }
+
+    /**
+     * Returns the rating given to a line that is not a puzzle, or a puzzle the rater failed on.
+     * It is unsolved, with no steps.
+     */
+    public static Rating invalid() {
+        return INVALID;
+    }
+
+    /**
+     * Returns the hardest (last in TechniqueType order) technique used, or null if none were needed
+     */
+    public TechniqueType getHardestTechnique() {
+        TechniqueType[] types = TechniqueType.values();
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if(counts[i] > 0)
+                return types[i];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of steps that used the technique
+     */
+    public int getCount(TechniqueType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of steps of each technique used, in TechniqueType order
+     */
+    public Map<TechniqueType, Integer> getCounts() {
+        Map<TechniqueType, Integer> map = new EnumMap<TechniqueType, Integer>(TechniqueType.class);
+        for (TechniqueType type : TechniqueType.values()) {
+            if(counts[type.ordinal()] > 0)
+                map.put(type, counts[type.ordinal()]);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the number of technique steps, not counting the cells filled in by search
+     */
+    public int getNumSteps() {
+        return numSteps;
+    }
+
+    /**
+     * Returns true if the techniques got stuck and the rest of the puzzle was left to backtracking search
+     */
+    public boolean isSearchUsed() {
+        return searchUsed;
+    }
+
+    /**
+     * Returns false if the puzzle has no solution
+     */
+    public boolean isSolved() {
+        return solved;
+    }
+
+    /**
+     * Returns true if this is the rating of a line that is not a puzzle, or a puzzle the rater failed on
+     */
+    public boolean isInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Returns the hardest technique's name (or None), the number of steps, and how the puzzle was finished:
+     * logic, search, or unsolvable. An invalid rating is just "invalid".
+     */
+    @Override
+    public String toString() {
+        if(invalid)
+            return "invalid";
+        TechniqueType hardest = getHardestTechnique();
+        return String.format("%s %d %s", hardest == null ? "None" : hardest.name(), numSteps,
+                             !solved ? "unsolvable" : searchUsed ? "search" : "logic");
+    }
+}
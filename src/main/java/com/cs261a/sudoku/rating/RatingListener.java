@@ -0,0 +1,30 @@
+package com.cs261a.sudoku.rating;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+import com.cs261a.sudoku.techniques.TechniqueType;
+import com.cs261a.sudoku.trace.StepListener;
+
+/**
+ * Counts the steps of each technique during one rating
+ */
+class RatingListener implements StepListener {
+
+    final int[] counts = new int[TechniqueType.values().length];
+    int numSteps;
+
+    @Override
+    public void stepApplied(Technique technique, Finding finding, Grid grid) {
+        counts[technique.getType().ordinal()]++;
+        numSteps++;
+    }
+
+    @Override
+    public void puzzleSolved(Grid grid) {
+    }
+
+    @Override
+    public void puzzleUnsolved(Grid grid, Throwable cause) {
+    }
+}
@@ -0,0 +1,420 @@
+package com.cs261a.sudoku.server;
+
+import com.cs261a.sudoku.BatchSolver;
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Pools;
+import com.cs261a.sudoku.engine.HybridEngine;
+import com.cs261a.sudoku.engine.SolutionCounter;
+import com.cs261a.sudoku.rating.Rater;
+import com.cs261a.sudoku.rating.Rating;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * An embedded HTTP service for solving, rating and counting the solutions of puzzles, built on the JDK's
+ * com.sun.net.httpserver so it needs no framework.
+ *
+ * Routes, all POST, with a body of one or more puzzle lines as read by BatchSolver.parsePuzzle:
+ *   /solve  - one result line per puzzle, as BatchSolver writes them (the hybrid engine solves every puzzle
+ *             that has a solution)
+ *   /rate   - one rating per puzzle, as Rating.toString, from the Rater and its cache
+ *   /count  - the number of solutions of each puzzle, up to the limit query parameter (default 2)
+ * Responses are plain text, one line per puzzle, or compact JSON with ?format=json or an Accept header
+ * asking for application/json. Each response has a Server-Timing header giving the time spent on the puzzles.
+ * A puzzle that can't be solved, rated or counted gives the line "invalid", or a JSON entry with an "error",
+ * and the rest of the request goes on.
+ *
+ * Exchanges are handled on virtual threads where the runtime has them (Java 21 and later), and otherwise on
+ * a bounded pool of platform threads; either way the solving itself runs on pools sized to the processors.
+ * In-flight work is limited in puzzles rather than requests: a request whose puzzles would take the total
+ * past maxInFlight is turned away with 503 and Retry-After, and a batch larger than maxInFlight with 413.
+ */
+public class SolverServer {
+
+    public static final int DEFAULT_PORT = 8261;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1 << 14;
+
+    // Largest request body read, in bytes: a full batch of 25x25 puzzles fits easily
+    private static final int MAX_BODY_LENGTH = 1 << 24;
+
+    // Most solutions /count will count up to per puzzle
+    private static final int MAX_COUNT_LIMIT = 1 << 20;
+
+    // Exchanges waiting for a handler thread, without virtual threads, before the server's own thread runs them
+    private static final int HANDLER_QUEUE_SIZE = 1 << 10;
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    private final BatchSolver batchSolver;
+    private final Rater rater;
+    private final ForkJoinPool countPool;
+    private final SolutionCounter counter;
+
+    /**
+     * Creates a server on the loopback address, not yet started
+     * @param port - the port to listen on, or 0 for any free port (see getPort)
+     */
+    public SolverServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+             Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param parallelism - threads solving puzzles, per route
+     * @param maxInFlight - most puzzles being worked on at once, across all requests
+     */
+    public SolverServer(InetSocketAddress address, int parallelism, int maxInFlight) throws IOException {
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.batchSolver = new BatchSolver(parallelism, new HybridEngine(true));
+        this.rater = new Rater(parallelism);
+        this.countPool = new ForkJoinPool(parallelism);
+        this.counter = new SolutionCounter(countPool);
+
+        this.handlers = newHandlerExecutor(parallelism);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(handlers);
+        server.createContext("/solve", new PuzzleHandler() {
+            @Override
+            void handle(List<String> puzzles, HttpExchange exchange, boolean json, StringBuilder out) {
+                List<BatchSolver.PuzzleResult> results = batchSolver.solveAll(puzzles);
+                for (int i = 0; i < results.size(); i++) {
+                    BatchSolver.PuzzleResult result = results.get(i);
+                    if(json) {
+                        separate(out, i);
+                        if(result.isInvalid())
+                            appendError(out, "Error: Puzzle could not be solved");
+                        else
+                            out.append("{\"solved\":").append(result.isSolved())
+                               .append(",\"grid\":\"").append(result.getLine()).append("\"}");
+                    } else {
+                        out.append(result.getLine()).append('\n');
+                    }
+                }
+            }
+        });
+        server.createContext("/rate", new PuzzleHandler() {
+            @Override
+            void handle(List<String> puzzles, HttpExchange exchange, boolean json, StringBuilder out) {
+                List<Rating> ratings = rater.rateAll(puzzles);
+                for (int i = 0; i < ratings.size(); i++) {
+                    Rating rating = ratings.get(i);
+                    if(json) {
+                        separate(out, i);
+                        if(rating.isInvalid()) {
+                            appendError(out, "Error: Puzzle could not be rated");
+                            continue;
+                        }
+                        out.append("{\"hardest\":");
+                        if(rating.getHardestTechnique() == null)
+                            out.append("null");
+                        else
+                            out.append('"').append(rating.getHardestTechnique().name()).append('"');
+                        out.append(",\"steps\":").append(rating.getNumSteps())
+                           .append(",\"searchUsed\":").append(rating.isSearchUsed())
+                           .append(",\"solved\":").append(rating.isSolved()).append('}');
+                    } else {
+                        out.append(rating).append('\n');
+                    }
+                }
+            }
+        });
+        server.createContext("/count", new PuzzleHandler() {
+            @Override
+            void handle(List<String> puzzles, HttpExchange exchange, boolean json, StringBuilder out)
+                    throws BadRequestException {
+                String limitParam = queryParam(exchange, "limit");
+                int limit;
+                try {
+                    limit = limitParam == null ? 2 : Integer.parseInt(limitParam);
+                } catch (NumberFormatException e) {
+                    throw new BadRequestException("Error: Invalid limit " + limitParam);
+                }
+                if(limit < 1 || limit > MAX_COUNT_LIMIT)
+                    throw new BadRequestException("Error: Limit must be from 1 to " + MAX_COUNT_LIMIT);
+
+                List<Integer> counts = count(puzzles, limit);
+                for (int i = 0; i < counts.size(); i++) {
+                    Integer count = counts.get(i);
+                    if(json) {
+                        separate(out, i);
+                        if(count == null)
+                            appendError(out, "Error: Puzzle solutions could not be counted");
+                        else
+                            out.append("{\"count\":").append(count).append('}');
+                    } else {
+                        out.append(count == null ? BatchSolver.INVALID_RESULT : count.toString()).append('\n');
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns an executor with a virtual thread per exchange if the runtime has them. Otherwise returns a
+     * pool of platform threads; once its queue is full, the server's dispatcher thread runs exchanges itself,
+     * so no more connections are accepted until it is done.
+     */
+    private static ExecutorService newHandlerExecutor(int parallelism) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Handlers mostly wait on the solving pools, so have a few per solving thread
+            int numThreads = 4 * parallelism;
+            return new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(HANDLER_QUEUE_SIZE),
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to delaySeconds for those in progress, then shuts down the pools
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        handlers.shutdown();
+        batchSolver.shutdown();
+        rater.shutdown();
+        countPool.shutdown();
+    }
+
+    /**
+     * Returns the port listened on, e.g. the one chosen if the server was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of puzzles currently being worked on
+     */
+    public int getNumInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Returns the number of solutions of each puzzle, up to limit, or null for a puzzle the counter fails on
+     */
+    private List<Integer> count(List<String> puzzles, int limit) {
+        return Pools.invoke(countPool, () -> puzzles.parallelStream()
+                                                    .map(puzzle -> countQuietly(puzzle, limit))
+                                                    .collect(Collectors.toList()));
+    }
+
+    private Integer countQuietly(String puzzle, int limit) {
+        try {
+            return counter.countSolutions(new Grid(BatchSolver.parsePuzzle(puzzle)), limit);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Thrown for requests that can't be served as sent, giving the message to respond with
+     */
+    private static class BadRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Reads and checks a route's puzzles, holds their in-flight permits while the route works on them,
+     * and writes the response
+     */
+    private abstract class PuzzleHandler implements HttpHandler {
+
+        /**
+         * Appends the response for the puzzles to out: a line per puzzle, or for JSON the elements of the
+         * results array
+         */
+        abstract void handle(List<String> puzzles, HttpExchange exchange, boolean json, StringBuilder out)
+                throws BadRequestException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            boolean json = wantsJson(exchange);
+            try {
+                if(!exchange.getRequestMethod().equals("POST")) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    respondError(exchange, 405, "Error: Use POST, with one puzzle per line", json);
+                    return;
+                }
+
+                List<String> puzzles;
+                try {
+                    puzzles = readPuzzles(exchange);
+                } catch (BadRequestException e) {
+                    respondError(exchange, 400, e.getMessage(), json);
+                    return;
+                }
+                if(puzzles.size() > maxInFlight) {
+                    respondError(exchange, 413, "Error: At most " + maxInFlight + " puzzles per request", json);
+                    return;
+                }
+                if(!inFlight.tryAcquire(puzzles.size())) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respondError(exchange, 503, "Error: Too many puzzles in flight, try again later", json);
+                    return;
+                }
+
+                StringBuilder out = new StringBuilder();
+                long start = System.nanoTime();
+                try {
+                    if(json)
+                        out.append("{\"results\":[");
+                    handle(puzzles, exchange, json, out);
+                    if(json)
+                        out.append("]}");
+                } catch (BadRequestException e) {
+                    respondError(exchange, 400, e.getMessage(), json);
+                    return;
+                } finally {
+                    inFlight.release(puzzles.size());
+                }
+                exchange.getResponseHeaders().set("Server-Timing",
+                        String.format("solve;dur=%.3f", (System.nanoTime() - start) / 1e6));
+                respond(exchange, 200, out, json);
+            } catch (RuntimeException e) {
+                respondError(exchange, 500, "Error: " + e, json);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Reads the body's puzzle lines, skipping blank ones
+         * @throws BadRequestException if the body is too long, has no puzzles, or a line is not a puzzle
+         */
+        private List<String> readPuzzles(HttpExchange exchange) throws IOException, BadRequestException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 13];
+            try (InputStream in = exchange.getRequestBody()) {
+                int numRead;
+                while ((numRead = in.read(buffer)) != -1) {
+                    if(body.size() + numRead > MAX_BODY_LENGTH)
+                        throw new BadRequestException("Error: Request body over " + MAX_BODY_LENGTH + " bytes");
+                    body.write(buffer, 0, numRead);
+                }
+            }
+
+            List<String> puzzles = new ArrayList<String>();
+            for (String line : new String(body.toByteArray(), StandardCharsets.US_ASCII).split("\n")) {
+                line = line.trim();
+                if(line.isEmpty())
+                    continue;
+                try {
+                    BatchSolver.parsePuzzle(line);
+                } catch (IllegalArgumentException e) {
+                    throw new BadRequestException("Puzzle " + (puzzles.size() + 1) + ": " + e.getMessage());
+                }
+                puzzles.add(line);
+            }
+            if(puzzles.isEmpty())
+                throw new BadRequestException("Error: No puzzles in request body");
+            return puzzles;
+        }
+    }
+
+    private static boolean wantsJson(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return "json".equals(queryParam(exchange, "format"))
+               || (accept != null && accept.contains("application/json"));
+    }
+
+    /**
+     * Returns the value of a query parameter, or null if it isn't given
+     */
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null)
+            return null;
+        for (String param : query.split("&")) {
+            if(param.startsWith(name + "="))
+                return param.substring(name.length() + 1);
+        }
+        return null;
+    }
+
+    private static void separate(StringBuilder out, int index) {
+        if(index > 0)
+            out.append(',');
+    }
+
+    private static void appendError(StringBuilder out, String message) {
+        out.append("{\"error\":\"").append(message.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"}");
+    }
+
+    private static void respondError(HttpExchange exchange, int status, String message, boolean json) throws IOException {
+        StringBuilder out = new StringBuilder();
+        if(json)
+            appendError(out, message);
+        else
+            out.append(message).append('\n');
+        respond(exchange, status, out, json);
+    }
+
+    private static void respond(HttpExchange exchange, int status, CharSequence body, boolean json) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", json ? "application/json" : "text/plain; charset=US-ASCII");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Usage: SolverServer [-port n] [-threads n] [-max-in-flight n]
+     * Serves on the loopback address, port 8261 by default, until the process is stopped.
+     */
+    public static void main(String args[]) throws IOException {
+        int port = DEFAULT_PORT;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        for (int arg = 0; arg < args.length; arg += 2) {
+            if(arg + 1 < args.length && args[arg].equals("-port")) {
+                port = Integer.parseInt(args[arg + 1]);
+            } else if(arg + 1 < args.length && args[arg].equals("-threads")) {
+                parallelism = Integer.parseInt(args[arg + 1]);
+            } else if(arg + 1 < args.length && args[arg].equals("-max-in-flight")) {
+                maxInFlight = Integer.parseInt(args[arg + 1]);
+            } else {
+                System.err.println("Usage: SolverServer [-port n] [-threads n] [-max-in-flight n]");
+                System.exit(1);
+            }
+        }
+
+        SolverServer server = new SolverServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                                               parallelism, maxInFlight);
+        server.start();
+        System.err.println("Serving /solve, /rate and /count on http://localhost:" + server.getPort());
+    }
+}
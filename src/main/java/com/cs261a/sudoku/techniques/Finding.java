@@ -0,0 +1,207 @@
+package com.cs261a.sudoku.techniques;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Region;
+
+/**
+ * An immutable application of a technique found in a grid: either a value to determine in a cell,
+ * or values to remove from the possible values of a set of cells.
+ * Cell sets are held as arrays of 64 bit words over the cell indexes (size*row + col), bit i of word i/64
+ * for cell i: two words for a 9x9 grid, four for 16x16, and ten for 25x25.
+ */
+public final class Finding {
+
+    private final TechniqueType type;
+
+    // The region the technique was applied to
+    private final Region region;
+    private final int regionNum;
+
+    // The cell to determine and the value to give it, or -1 and 0 if the finding only removes possible values
+    private final int cell;
+    private final int value;
+
+    // Cell set of a finding without pattern or elimination cells
+    private static final long[] NO_CELLS = new long[0];
+
+    // The cells making up the pattern the technique found (e.g. the pointing cells)
+    private final long[] pattern;
+
+    // The cells to remove possible values from, and the mask of values to remove
+    private final long[] eliminate;
+    private final int eliminateVals;
+
+    // How many applications of the technique were in the grid when this one was found
+    private final int numApplications;
+
+    private Finding(TechniqueType type, Region region, int regionNum, int cell, int value,
+                    long[] pattern, long[] eliminate, int eliminateVals, int numApplications) {
+        this.type = type;
+        this.region = region;
+        this.regionNum = regionNum;
+        this.cell = cell;
+        this.value = value;
+        this.pattern = pattern;
+        this.eliminate = eliminate;
+        this.eliminateVals = eliminateVals;
+        this.numApplications = numApplications;
+    }
+
+    /**
+     * A finding that determines val in the cell at index
+     */
+    public static Finding placement(TechniqueType type, Region region, int regionNum, int cell, int value,
+                                    int numApplications) {
+        return new Finding(type, region, regionNum, cell, value, NO_CELLS, NO_CELLS, 0, numApplications);
+    }
+
+    /**
+     * A finding that removes the values in eliminateVals from the possible values of the eliminate cells.
+     * The cell sets are kept, not copied, so they must not be modified afterwards.
+     */
+    public static Finding elimination(TechniqueType type, Region region, int regionNum, long[] pattern,
+                                      long[] eliminate, int eliminateVals, int numApplications) {
+        return new Finding(type, region, regionNum, -1, 0, pattern, eliminate, eliminateVals, numApplications);
+    }
+
+    /**
+     * Applies this finding to the grid
+     */
+    void applyTo(Grid grid) {
+        if(cell >= 0)
+            grid.determineCell(grid.getCell(cell), value);
+
+        for (int word = 0; word < eliminate.length; word++) {
+            for (long bits = eliminate[word]; bits != 0; bits &= bits - 1) {
+                grid.removePossibleVals(64*word + Long.numberOfTrailingZeros(bits), eliminateVals);
+            }
+        }
+    }
+
+    /**
+     * Returns true if applying this finding would still change the grid: the cell to determine is still
+     * undetermined with the value possible, or some elimination cell still has a value to remove.
+     */
+    public boolean isApplicableTo(Grid grid) {
+        if(cell >= 0)
+            return grid.getValue(cell) == 0 && (grid.getCandidates(cell) & (1 << value)) != 0;
+
+        for (int word = 0; word < eliminate.length; word++) {
+            for (long bits = eliminate[word]; bits != 0; bits &= bits - 1) {
+                if((grid.getCandidates(64*word + Long.numberOfTrailingZeros(bits)) & eliminateVals) != 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many possible values applying this finding would remove directly from its elimination cells.
+     * Values removed from peers when a placement determines its cell are not counted.
+     */
+    public int getNumEliminations(Grid grid) {
+        int count = 0;
+        for (int word = 0; word < eliminate.length; word++) {
+            for (long bits = eliminate[word]; bits != 0; bits &= bits - 1) {
+                count += Integer.bitCount(grid.getCandidates(64*word + Long.numberOfTrailingZeros(bits)) & eliminateVals);
+            }
+        }
+        return count;
+    }
+
+    public TechniqueType getType() {
+        return type;
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    public int getRegionNum() {
+        return regionNum;
+    }
+
+    /**
+     * Returns the index of the cell this finding determines, or -1 if it only removes possible values
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public boolean isPlacement() {
+        return cell >= 0;
+    }
+
+    public boolean isInPattern(int index) {
+        return isInSet(pattern, index);
+    }
+
+    public boolean isEliminatedFrom(int index) {
+        return isInSet(eliminate, index);
+    }
+
+    /**
+     * Returns the index of the first cell of the pattern, or -1 if there is none
+     */
+    public int getFirstPatternCell() {
+        return firstCell(pattern);
+    }
+
+    public int getNumEliminationCells() {
+        int count = 0;
+        for (long bits : eliminate) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mask of values removed from each elimination cell
+     */
+    public int getEliminateVals() {
+        return eliminateVals;
+    }
+
+    public int getNumApplications() {
+        return numApplications;
+    }
+
+    /**
+     * Returns an empty cell set with room for every cell of the grid
+     */
+    static long[] newCellSet(Grid grid) {
+        return new long[grid.getTopology().getNumCellWords()];
+    }
+
+    static void addCell(long[] set, int index) {
+        set[index >>> 6] |= 1L << index;
+    }
+
+    static boolean isEmpty(long[] set) {
+        for (long bits : set) {
+            if(bits != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the smallest cell index in the set, or -1 if it is empty
+     */
+    static int firstCell(long[] set) {
+        for (int word = 0; word < set.length; word++) {
+            if(set[word] != 0)
+                return 64*word + Long.numberOfTrailingZeros(set[word]);
+        }
+        return -1;
+    }
+
+    private static boolean isInSet(long[] set, int index) {
+        int word = index >>> 6;
+        return word < set.length && (set[word] & (1L << index)) != 0;
+    }
+}
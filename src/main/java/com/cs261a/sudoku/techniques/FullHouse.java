@@ -4,88 +4,91 @@ import com.cs261a.sudoku.Cell;
 import com.cs261a.sudoku.Grid;
 import com.cs261a.sudoku.Region;
 
+import java.util.List;
+
 /**
  * Created by Garrett on 6/1/2015.
+ * Finds an undetermined cell whose other cells (8 on a 9x9 grid) are all determined in either its row, column, or block.
  */
 public class FullHouse extends Technique {
-    // The undetermined cell we find which has 8 determined siblings in either its row, column, or block.
-    private Cell undeterminedCell;
-
-    // The region in which we find our first cell to apply FullHouse to.
-    private Region firstFoundRegion;
-
-    // The number of the region (i.e. 3rd row) in which we find our first cell to apply FullHouse to.
-    private int firstFoundRegionNum;
 
+    @Override
+    public TechniqueType getType() {
+        return TechniqueType.FullHouse;
+    }
 
     /**
-     * Finds all applications of this technique in the given grid
-     * Returns true if technique applies at least once, false if technique does not apply.
-     * Sets up 'undeterminedCell' attribute to be set in 'applyMe'
+     * Finds the first application of this technique in the given grid, counting all of them.
+     * Returns null if the technique does not apply.
+     * @throws BadTechniqueException if a region's last undetermined cell has no possible value left
      */
     @Override
-    public boolean isApplicable(Grid grid) {
-        // Find the first application of this technique. If there is none, return false.
-        if(!findFirstApplication(grid)) {
-            return false;
-        }
-
-        // Resume the search where we left off, to count the rest of the applications of this technique
-        int searchRegionNum = firstFoundRegionNum+1;
+    public Finding find(Grid grid) throws BadTechniqueException {
+        Cell undeterminedCell = null;
+        Region firstFoundRegion = null;
+        int firstFoundRegionNum = 0;
+        int numApplications = 0;
 
-        for (int i = firstFoundRegion.ordinal(); i < 3; i++) {
-            Region region = Region.values()[i];
-            for (int j = searchRegionNum; j < 9; j++) {
-                // Check if only 1 cell is undetermined
-                if (grid.getNumUndeterminedInRegion(region, j) == 1)
+        for (Region region : Region.values()) {
+            for (int i = 0; i < grid.getSize(); i++) {
+                // Check if only 1 cell is undetermined in region[i]
+                if (grid.getNumUndeterminedInRegion(region, i) == 1) {
                     numApplications++;
+                    if(undeterminedCell == null) {
+                        firstFoundRegion = region;
+                        firstFoundRegionNum = i;
+                        undeterminedCell = grid.firstUndeterminedCellInRegion(region, i);
+                    }
+                }
             }
-            searchRegionNum = 0;
         }
-        return true;
+        // If no fitting cells are found, return null
+        if(undeterminedCell == null)
+            return null;
+
+        // The other cells of the region hold every other value, so the last one has at most one possible value
+        if(undeterminedCell.getNumPossibleValues() == 0)
+            throw new BadTechniqueException(this, grid);
+
+        return Finding.placement(getType(), firstFoundRegion, firstFoundRegionNum, undeterminedCell.getIndex(),
+                                 undeterminedCell.getOnlyPossibleValue(), numApplications);
     }
 
     /**
-     * Searches for the first possible application of FullHouse.
-     * Sets attributes so we can continue searching, in order to count the total number of applications
-     * @return True if we find an application of FullHouse, false if not.
+     * @throws BadTechniqueException if a region's last undetermined cell has no possible value left
      */
-    private boolean findFirstApplication(Grid grid) {
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) throws BadTechniqueException {
+        int numApplications = 0;
         for (Region region : Region.values()) {
-            for (int i = 0; i < 9; i++) {
-                // Check if only 1 cell is undetermined in region[i]
-                if (grid.getNumUndeterminedInRegion(region, i) == 1) {
-                    // Set attributes when we find an applicable cell
+            for (int i = 0; i < grid.getSize(); i++) {
+                if (grid.getNumUndeterminedInRegion(region, i) == 1)
                     numApplications++;
-                    firstFoundRegion = region;
-                    firstFoundRegionNum = i;
-                    // get the array holding the one undetermined cell
-                    Cell[] undeterminedCells = grid.undeterminedCellsInRegion(region, i);
-                    undeterminedCell = undeterminedCells[0];
-                    return true;
+            }
+        }
+
+        int numFound = 0;
+        for (Region region : Region.values()) {
+            for (int i = 0; i < grid.getSize(); i++) {
+                if (grid.getNumUndeterminedInRegion(region, i) == 1) {
+                    Cell cell = grid.firstUndeterminedCellInRegion(region, i);
+                    if(cell.getNumPossibleValues() == 0)
+                        throw new BadTechniqueException(this, grid);
+                    findings.add(Finding.placement(getType(), region, i, cell.getIndex(),
+                                                   cell.getOnlyPossibleValue(), numApplications));
+                    numFound++;
                 }
             }
         }
-        // If no fitting cells are found, return false
-        return false;
+        return numFound;
     }
 
     @Override
-    public void applyMe(Grid grid) {
-        if(undeterminedCell == null)
-            throw new RuntimeException("ERROR: FullHouse cell = null");
-
-        if(undeterminedCell.getNumPossibleValues() != 1)
-            throw new RuntimeException("ERROR: FullHouse cell: " + undeterminedCell.toString() + " more than 1 possible value");
-
-        grid.determineCell(undeterminedCell, undeterminedCell.getOnlyPossibleValue());
-    }
-
-    public String applyResult() {
+    public String describe(Finding finding, Grid grid) {
         StringBuilder str = new StringBuilder();
-        str.append(getClass().getSimpleName()).append(": Determining cell [").append(undeterminedCell.toString());
-        str.append("] with val=").append(undeterminedCell.getValue());
-        str.append(" in ").append(firstFoundRegion).append(" ").append(firstFoundRegionNum);
+        str.append(getClass().getSimpleName()).append(": Determining cell [").append(grid.getCell(finding.getCell()).toString());
+        str.append("] with val=").append(Grid.valueToChar(finding.getValue()));
+        str.append(" in ").append(finding.getRegion()).append(" ").append(finding.getRegionNum());
         return str.toString();
     }
 }
@@ -1,24 +1,17 @@
 package com.cs261a.sudoku.techniques;
 
-import com.cs261a.sudoku.Grid;
-
 /**
  * Created by Garrett on 5/25/2015.
+ * HiddenSubset of 2 cells and 2 values.
  */
-public class HiddenPair extends Technique {
-    @Override
-    public boolean isApplicable(Grid grid) {
-        return false;
-    }
+public class HiddenPair extends HiddenSubset {
 
-    @Override
-    public void applyMe(Grid grid) {
-        return;
+    public HiddenPair() {
+        super(2);
     }
 
     @Override
-    public String applyResult() {
-        return null;
+    public TechniqueType getType() {
+        return TechniqueType.HiddenPair;
     }
-
 }
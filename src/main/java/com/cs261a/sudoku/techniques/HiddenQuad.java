@@ -0,0 +1,16 @@
+package com.cs261a.sudoku.techniques;
+
+/**
+ * HiddenSubset of 4 cells and 4 values.
+ */
+public class HiddenQuad extends HiddenSubset {
+
+    public HiddenQuad() {
+        super(4);
+    }
+
+    @Override
+    public TechniqueType getType() {
+        return TechniqueType.HiddenQuad;
+    }
+}
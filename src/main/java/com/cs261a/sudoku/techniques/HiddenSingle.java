@@ -1,110 +1,94 @@
 package com.cs261a.sudoku.techniques;
 
-import com.cs261a.sudoku.Cell;
 import com.cs261a.sudoku.Grid;
 import com.cs261a.sudoku.Region;
 
-import java.util.BitSet;
+import java.util.List;
 
 /**
  * Created by Garrett on 5/25/2015.
+ * Finds a value which is possible in only one cell of a row, column, or block.
  */
 public class HiddenSingle extends Technique {
 
-    // The undetermined cell that is a HiddenSingle
-    private Cell undeterminedCell;
-
-    // The HiddenSingle value
-    private int hiddenValue;
-
-    // The region type in which we are first able to apply HiddenSingle
-    private Region firstFoundRegion;
-
-    // The number of the region (i.e. 3rd row) in which we find our first application of the technique
-    private int firstFoundRegionNum;
-
     @Override
-    public boolean isApplicable(Grid grid) {
-        // Find the first application of this technique. If there is none, return false.
-        if(!findFirstApplication(grid)) {
-            return false;
-        }
+    public TechniqueType getType() {
+        return TechniqueType.HiddenSingle;
+    }
 
-        // Resume the search where we left off, to count the rest of the applications of this technique
-        int searchRegionNum = firstFoundRegionNum+1;
+    @Override
+    public Finding find(Grid grid) {
+        Region firstFoundRegion = null;
+        int firstFoundRegionNum = 0;
+        int hiddenValue = 0;
+        int numApplications = 0;
 
-        for (int i = firstFoundRegion.ordinal(); i < 3; i++) {
-            Region region = Region.values()[i];
-            for (int j = searchRegionNum; j < 9; j++) {
-                BitSet hiddenSingles = findHiddenSingle(grid.getRegion(region, j));
-                numApplications += hiddenSingles.cardinality();
+        for (Region region : Region.values()) {
+            for (int regionNum = 0; regionNum < grid.getSize(); regionNum++) {
+                int hiddenSingles = grid.getSingleCandidateValsInRegion(region, regionNum);
+                if(hiddenSingles != 0) {
+                    numApplications += Integer.bitCount(hiddenSingles);
+                    if(firstFoundRegion == null) {
+                        hiddenValue = Integer.numberOfTrailingZeros(hiddenSingles);
+                        firstFoundRegion = region;
+                        firstFoundRegionNum = regionNum;
+                    }
+                }
             }
-            searchRegionNum = 0;
         }
-        return true;
+        // If no fitting cells are found, return null
+        if(firstFoundRegion == null)
+            return null;
+
+        int index = cellWithVal(grid.getTopology().unitIndex(firstFoundRegion, firstFoundRegionNum), hiddenValue, grid);
+        if(index >= 0)
+            return Finding.placement(getType(), firstFoundRegion, firstFoundRegionNum, index, hiddenValue, numApplications);
+        throw new RuntimeException("ERROR: Could not find cell in region " + firstFoundRegion + " "
+                + firstFoundRegionNum + " to apply HiddenSingle technique with value= " + hiddenValue);
     }
 
-    /**
-     * Searches for the first possible application of technique.
-     * Sets attributes so we can continue searching, in order to count the total number of applications
-     * @return True if we find an application of technique, false if not.
-     */
-    private boolean findFirstApplication(Grid grid) {
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) {
+        int numApplications = 0;
         for (Region region : Region.values()) {
-            for (int regionNum = 0; regionNum < 9; regionNum++) {
-                BitSet hiddenSingles = findHiddenSingle(grid.getRegion(region, regionNum));
-
-                if(!hiddenSingles.isEmpty()) {
-                    hiddenValue = hiddenSingles.nextSetBit(1);
-                    numApplications += hiddenSingles.cardinality();
-                    firstFoundRegion = region;
-                    firstFoundRegionNum = regionNum;
-                    return true;
-                }
+            for (int regionNum = 0; regionNum < grid.getSize(); regionNum++) {
+                numApplications += Integer.bitCount(grid.getSingleCandidateValsInRegion(region, regionNum));
             }
         }
-        // If no fitting cells are found, return false
-        return false;
-    }
-
-    private BitSet findHiddenSingle(Cell[] region) {
-        BitSet foundOnce  = Grid.getDeterminedValsInRegion(region);
-        BitSet foundTwice = Grid.getDeterminedValsInRegion(region);
 
-        // Look for hidden single within region
-        for (Cell cell : region) {
-            if(!cell.isDetermined()) {
-                BitSet cloneFoundOnce = (BitSet) foundOnce.clone();
-                foundOnce.or(cell.getBits());
-
-                cloneFoundOnce.and(cell.getBits());
-                foundTwice.or(cloneFoundOnce);
+        int numFound = 0;
+        for (Region region : Region.values()) {
+            for (int regionNum = 0; regionNum < grid.getSize(); regionNum++) {
+                int hiddenSingles = grid.getSingleCandidateValsInRegion(region, regionNum);
+                for (; hiddenSingles != 0; hiddenSingles &= hiddenSingles - 1) {
+                    int hiddenValue = Integer.numberOfTrailingZeros(hiddenSingles);
+                    int index = cellWithVal(grid.getTopology().unitIndex(region, regionNum), hiddenValue, grid);
+                    if(index >= 0) {
+                        findings.add(Finding.placement(getType(), region, regionNum, index, hiddenValue, numApplications));
+                        numFound++;
+                    }
+                }
             }
         }
-
-        foundTwice.flip(1,10);
-        return foundTwice;
+        return numFound;
     }
 
-    @Override
-    public void applyMe(Grid grid) {
-        for(Cell cell : grid.getRegion(firstFoundRegion, firstFoundRegionNum)) {
-            if(cell.isPotentialValue(hiddenValue)) {
-                undeterminedCell = cell;
-                grid.determineCell(undeterminedCell, hiddenValue);
-                return;
-            }
+    /**
+     * Returns the index of the first cell of the unit with val as a possible value, or -1 if there is none
+     */
+    private static int cellWithVal(int unit, int val, Grid grid) {
+        for (int index : grid.getTopology().getUnits()[unit]) {
+            if((grid.getCandidates(index) & (1 << val)) != 0)
+                return index;
         }
-        throw new RuntimeException("ERROR: Could not find cell in region " + firstFoundRegion + " "
-                + firstFoundRegionNum + " to apply HiddenSingle technique with value= " + hiddenValue);
-
+        return -1;
     }
 
     @Override
-    public String applyResult() {
+    public String describe(Finding finding, Grid grid) {
         StringBuilder str = new StringBuilder();
-        str.append(getClass().getSimpleName()).append(": Determining cell [").append(undeterminedCell.toString());
-        str.append("] with val=").append(hiddenValue).append(" in ").append(firstFoundRegion).append(" ").append(firstFoundRegionNum);
+        str.append(getClass().getSimpleName()).append(": Determining cell [").append(grid.getCell(finding.getCell()).toString());
+        str.append("] with val=").append(Grid.valueToChar(finding.getValue())).append(" in ").append(finding.getRegion()).append(" ").append(finding.getRegionNum());
         return str.toString();
     }
 }
@@ -0,0 +1,136 @@
+package com.cs261a.sudoku.techniques;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Region;
+
+import java.util.List;
+
+/**
+ * Finds N values of a row, column, or block which, taken together, are possible in exactly N of its cells.
+ * Those cells must hold those values, so every other value can be removed from them.
+ * Subclasses fix N: HiddenPair (2), HiddenTriple (3), HiddenQuad (4).
+ */
+public abstract class HiddenSubset extends Technique {
+
+    private final int size;
+
+    protected HiddenSubset(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public Finding find(Grid grid) {
+        return scan(grid, null);
+    }
+
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) {
+        int numBefore = findings.size();
+        scan(grid, findings);
+        return findings.size() - numBefore;
+    }
+
+    /**
+     * @param findings - if null, the search stops at the first finding and returns it.
+     *                   Otherwise every finding is added to it and null is returned.
+     */
+    private Finding scan(Grid grid, List<Finding> findings) {
+        int n = grid.getSize();
+        for (int unit = 0; unit < grid.getTopology().getNumUnits(); unit++) {
+            // The subset's cells need at least one other value to remove
+            if(grid.getNumUndeterminedInRegion(Region.values()[unit / n], unit % n) <= size)
+                continue;
+
+            Finding finding = searchUnit(grid, unit, 1, 0, 0, 0, findings);
+            if(finding != null)
+                return finding;
+        }
+        return null;
+    }
+
+    /**
+     * Extends the subset of values chosen so far with each larger value, depth first.
+     * @param start - the smallest value that may be added
+     * @param depth - number of values chosen so far
+     * @param subsetVals - mask of the values chosen so far
+     * @param positions - mask of the positions in the unit (0-8 on a 9x9 grid) where any chosen value is possible
+     */
+    private Finding searchUnit(Grid grid, int unit, int start, int depth, int subsetVals, int positions,
+                               List<Finding> findings) {
+        for (int val = start; val <= grid.getSize(); val++) {
+            // Values possible in one cell are hidden singles, and in none are already determined
+            int count = grid.getNumCandidatesInUnit(unit, val);
+            if(count < 2 || count > size)
+                continue;
+
+            int newPositions = positions | positionsOf(grid, unit, val);
+            if(Integer.bitCount(newPositions) > size)
+                continue;
+
+            Finding finding;
+            if(depth + 1 == size) {
+                finding = Integer.bitCount(newPositions) == size
+                          ? subsetFinding(grid, unit, subsetVals | (1 << val), newPositions) : null;
+                if(finding != null && findings != null) {
+                    findings.add(finding);
+                    finding = null;
+                }
+            } else {
+                finding = searchUnit(grid, unit, val + 1, depth + 1, subsetVals | (1 << val), newPositions, findings);
+            }
+            if(finding != null)
+                return finding;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the mask of positions in the unit of the cells with val as a possible value
+     */
+    private static int positionsOf(Grid grid, int unit, int val) {
+        int[] cells = grid.getTopology().getUnits()[unit];
+        int positions = 0;
+        for (int pos = 0; pos < cells.length; pos++) {
+            if((grid.getCandidates(cells[pos]) & (1 << val)) != 0)
+                positions |= 1 << pos;
+        }
+        return positions;
+    }
+
+    /**
+     * Builds the finding removing all other values from the subset's cells,
+     * or returns null if they have no other values.
+     */
+    private Finding subsetFinding(Grid grid, int unit, int subsetVals, int positions) {
+        int otherVals = grid.getAllValues() & ~subsetVals;
+        long[] pattern = Finding.newCellSet(grid);
+        long[] eliminate = Finding.newCellSet(grid);
+        int[] cells = grid.getTopology().getUnits()[unit];
+        for (int pos = 0; pos < cells.length; pos++) {
+            if((positions & (1 << pos)) == 0)
+                continue;
+
+            int index = cells[pos];
+            Finding.addCell(pattern, index);
+            if((grid.getCandidates(index) & otherVals) != 0)
+                Finding.addCell(eliminate, index);
+        }
+        if(Finding.isEmpty(eliminate))
+            return null;
+
+        return Finding.elimination(getType(), Region.values()[unit / cells.length], unit % cells.length, pattern,
+                                   eliminate, otherVals, 1);
+    }
+
+    @Override
+    public String describe(Finding finding, Grid grid) {
+        StringBuilder str = new StringBuilder();
+        str.append(getClass().getSimpleName()).append(": Values ");
+        str.append(Grid.maskToString(grid.getAllValues() & ~finding.getEliminateVals()));
+        str.append(" of ").append(finding.getRegion()).append(" ").append(finding.getRegionNum());
+        str.append(" only fit cells");
+        NakedSubset.appendPatternCells(str, finding, grid);
+        str.append(", removing all other values from them");
+        return str.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.cs261a.sudoku.techniques;
+
+/**
+ * HiddenSubset of 3 cells and 3 values.
+ */
+public class HiddenTriple extends HiddenSubset {
+
+    public HiddenTriple() {
+        super(3);
+    }
+
+    @Override
+    public TechniqueType getType() {
+        return TechniqueType.HiddenTriple;
+    }
+}
@@ -0,0 +1,16 @@
+package com.cs261a.sudoku.techniques;
+
+/**
+ * NakedSubset of 4 cells and 4 values.
+ */
+public class NakedQuad extends NakedSubset {
+
+    public NakedQuad() {
+        super(4);
+    }
+
+    @Override
+    public TechniqueType getType() {
+        return TechniqueType.NakedQuad;
+    }
+}
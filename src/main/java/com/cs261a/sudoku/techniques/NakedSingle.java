@@ -1,55 +1,55 @@
 package com.cs261a.sudoku.techniques;
 
-import com.cs261a.sudoku.Cell;
+import com.cs261a.sudoku.CandidateScanner;
 import com.cs261a.sudoku.Grid;
 import com.cs261a.sudoku.Region;
 
-import java.util.BitSet;
+import java.util.List;
 
 /**
  * Created by Garrett on 5/25/2015.
+ * Finds an undetermined cell with only one possible value left.
+ * The cells are found by the CandidateScanner in use.
  */
 public class NakedSingle extends Technique {
 
-    // The undetermined cell that is a NakedSingle
-    private Cell undeterminedCell;
-
-    // The value of the NakedSingle
-    private int nakedValue;
-
     @Override
-    public boolean isApplicable(Grid grid) {
-        boolean foundFirst = false;
-        // Only need to cycle through rows, as columns and blocks would be redundant
-        for(int rowNum = 0; rowNum < 9; rowNum++) {
-            for(Cell cell : grid.getRow(rowNum)) {
-                if(cell.getNumPossibleValues() == 1) {
-                    numApplications++;
-                    if(!foundFirst) {
-                        foundFirst = true;
-                        undeterminedCell = cell;
-                        nakedValue = cell.getOnlyPossibleValue();
-                    }
-                }
-            }
-        }
-
-        return foundFirst;
+    public TechniqueType getType() {
+        return TechniqueType.NakedSingle;
     }
 
     @Override
-    public void applyMe(Grid grid) {
-        if(undeterminedCell == null)
-            throw new RuntimeException("ERROR: NakedSingle cell = null");
+    public Finding find(Grid grid) {
+        long[] cells = Finding.newCellSet(grid);
+        int numApplications = CandidateScanner.get().findSingleCandidateCells(grid, cells);
+        if(numApplications == 0)
+            return null;
+
+        int first = Finding.firstCell(cells);
+        return Finding.placement(getType(), Region.ROW, grid.getTopology().getRowOf()[first], first,
+                                 Integer.numberOfTrailingZeros(grid.getCandidates(first)), numApplications);
+    }
 
-        grid.determineCell(undeterminedCell, nakedValue);
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) {
+        long[] cells = Finding.newCellSet(grid);
+        int numApplications = CandidateScanner.get().findSingleCandidateCells(grid, cells);
+
+        for (int word = 0; word < cells.length; word++) {
+            for (long bits = cells[word]; bits != 0; bits &= bits - 1) {
+                int index = 64*word + Long.numberOfTrailingZeros(bits);
+                findings.add(Finding.placement(getType(), Region.ROW, grid.getTopology().getRowOf()[index], index,
+                                               Integer.numberOfTrailingZeros(grid.getCandidates(index)), numApplications));
+            }
+        }
+        return numApplications;
     }
 
     @Override
-    public String applyResult() {
+    public String describe(Finding finding, Grid grid) {
         StringBuilder str = new StringBuilder();
-        str.append(getClass().getSimpleName()).append(": Determining cell [").append(undeterminedCell.toString());
-        str.append("] with val=").append(nakedValue);
+        str.append(getClass().getSimpleName()).append(": Determining cell [").append(grid.getCell(finding.getCell()).toString());
+        str.append("] with val=").append(Grid.valueToChar(finding.getValue()));
         return str.toString();
     }
 }
@@ -0,0 +1,127 @@
+package com.cs261a.sudoku.techniques;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.Region;
+
+import java.util.List;
+
+/**
+ * Finds N undetermined cells of a row, column, or block whose possible values, taken together, are exactly N values.
+ * Those values must go in those cells, so they can be removed from every other cell of the region.
+ * Subclasses fix N: NakedPair (2), NakedTriple (3), NakedQuad (4).
+ */
+public abstract class NakedSubset extends Technique {
+
+    private final int size;
+
+    protected NakedSubset(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public Finding find(Grid grid) {
+        return scan(grid, null);
+    }
+
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) {
+        int numBefore = findings.size();
+        scan(grid, findings);
+        return findings.size() - numBefore;
+    }
+
+    /**
+     * @param findings - if null, the search stops at the first finding and returns it.
+     *                   Otherwise every finding is added to it and null is returned.
+     */
+    private Finding scan(Grid grid, List<Finding> findings) {
+        int n = grid.getSize();
+        for (int unit = 0; unit < grid.getTopology().getNumUnits(); unit++) {
+            // A subset needs at least one other undetermined cell in the region to remove values from
+            if(grid.getNumUndeterminedInRegion(Region.values()[unit / n], unit % n) <= size)
+                continue;
+
+            Finding finding = searchUnit(grid, unit, 0, 0, 0, 0, findings);
+            if(finding != null)
+                return finding;
+        }
+        return null;
+    }
+
+    /**
+     * Extends the subset chosen so far with each later cell of the unit, depth first.
+     * @param start - position in the unit (0-8 on a 9x9 grid) of the first cell that may be added
+     * @param depth - number of cells chosen so far
+     * @param chosen - mask of the positions in the unit chosen so far
+     * @param union - possible values of the chosen cells, together
+     */
+    private Finding searchUnit(Grid grid, int unit, int start, int depth, int chosen, int union, List<Finding> findings) {
+        int[] cells = grid.getTopology().getUnits()[unit];
+        for (int pos = start; pos < cells.length; pos++) {
+            int mask = grid.getCandidates(cells[pos]);
+            if(mask == 0 || Integer.bitCount(mask) > size)
+                continue;
+
+            int newUnion = union | mask;
+            if(Integer.bitCount(newUnion) > size)
+                continue;
+
+            Finding finding;
+            if(depth + 1 == size) {
+                finding = Integer.bitCount(newUnion) == size ? subsetFinding(grid, unit, chosen | (1 << pos), newUnion) : null;
+                if(finding != null && findings != null) {
+                    findings.add(finding);
+                    finding = null;
+                }
+            } else {
+                finding = searchUnit(grid, unit, pos + 1, depth + 1, chosen | (1 << pos), newUnion, findings);
+            }
+            if(finding != null)
+                return finding;
+        }
+        return null;
+    }
+
+    /**
+     * Builds the finding removing the subset's values from the other cells of the unit,
+     * or returns null if no other cell has any of them.
+     */
+    private Finding subsetFinding(Grid grid, int unit, int chosen, int subsetVals) {
+        long[] pattern = Finding.newCellSet(grid);
+        long[] eliminate = Finding.newCellSet(grid);
+        int[] cells = grid.getTopology().getUnits()[unit];
+        for (int pos = 0; pos < cells.length; pos++) {
+            int index = cells[pos];
+            if((chosen & (1 << pos)) != 0)
+                Finding.addCell(pattern, index);
+            else if((grid.getCandidates(index) & subsetVals) != 0)
+                Finding.addCell(eliminate, index);
+        }
+        if(Finding.isEmpty(eliminate))
+            return null;
+
+        return Finding.elimination(getType(), Region.values()[unit / cells.length], unit % cells.length, pattern,
+                                   eliminate, subsetVals, 1);
+    }
+
+    @Override
+    public String describe(Finding finding, Grid grid) {
+        StringBuilder str = new StringBuilder();
+        str.append(getClass().getSimpleName()).append(": Cells");
+        appendPatternCells(str, finding, grid);
+        str.append(" of ").append(finding.getRegion()).append(" ").append(finding.getRegionNum());
+        str.append(" hold only ").append(Grid.maskToString(finding.getEliminateVals()));
+        str.append(", removing them from ").append(finding.getNumEliminationCells()).append(" other cells");
+        return str.toString();
+    }
+
+    /**
+     * Appends the pattern cells of the finding as " (row,col)" pairs
+     */
+    static void appendPatternCells(StringBuilder str, Finding finding, Grid grid) {
+        for (int index = 0; index < grid.getNumCells(); index++) {
+            if(finding.isInPattern(index))
+                str.append(" (").append(index / grid.getSize()).append(",").append(index % grid.getSize()).append(")");
+        }
+    }
+}
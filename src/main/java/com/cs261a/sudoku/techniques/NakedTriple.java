@@ -0,0 +1,16 @@
+package com.cs261a.sudoku.techniques;
+
+/**
+ * NakedSubset of 3 cells and 3 values.
+ */
+public class NakedTriple extends NakedSubset {
+
+    public NakedTriple() {
+        super(3);
+    }
+
+    @Override
+    public TechniqueType getType() {
+        return TechniqueType.NakedTriple;
+    }
+}
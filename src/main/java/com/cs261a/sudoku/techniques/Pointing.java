@@ -1,198 +1,106 @@
 package com.cs261a.sudoku.techniques;
 
+import com.cs261a.sudoku.CandidateScanner;
 import com.cs261a.sudoku.Cell;
 import com.cs261a.sudoku.Grid;
 import com.cs261a.sudoku.Region;
+import com.cs261a.sudoku.Topology;
 
-import java.util.BitSet;
+import java.util.List;
 
 /**
  * Created by Garrett on 6/6/2015.
  */
 public class Pointing extends Technique {
-    // The type of region (row or column) the pointing is happening in
-    private Region regionType;
-
-    // The region number for which the pointing is occuring
-    private int regionNum;
-
-    // The value we are pointing
-    int pointValue;
-
-    // The third of the region which contains the pointers (need to remove val from OTHER 2/3 of region)
-    int thirdThatIsPointing;
 
     @Override
-    public boolean isApplicable(Grid grid) {
-        for(int blockNum = 0; blockNum < 9; blockNum++) {
-            BitSet bitSet = grid.getDeterminedValsInRegion(Region.BLOCK, blockNum);
-            Cell[] block = grid.getBlock(blockNum);
-            bitSet.flip(1,10);
-            int num = bitSet.nextSetBit(1);
-
-            // Go through all undetermined vals in the block
-            while(num != -1) {
-                // Check each Row
-                for (int rowNum = 0; rowNum < 3; rowNum++) {
-                    if(valueConfinedToRowInBlock(block, rowNum, num)) {
-                        if(valueExistsInRestOfRow(grid, blockNum, rowNum, num)) {
-                            regionType = Region.ROW;
-                            regionNum = getRowNum(blockNum, rowNum);
-                            pointValue = num;
-                            thirdThatIsPointing = blockNum % 3;
-                            return true;
-                        }
-                    }
-                }
-
-                // Check each Column
-                for (int colNum = 0; colNum < 3; colNum++) {
-                    if(valueConfinedToColInBlock(block, colNum, num)) {
-                        if(valueExistsInRestOfCol(grid, blockNum, colNum, num)) {
-                            regionType = Region.COLUMN;
-                            regionNum = getColNum(blockNum, colNum);
-                            pointValue = num;
-                            thirdThatIsPointing = blockNum / 3;
-                            return true;
-                        }
-                    }
-                }
-
-                num = bitSet.nextSetBit(num + 1);
-            }
-
-        }
-        return false;
+    public TechniqueType getType() {
+        return TechniqueType.Pointing;
     }
 
-    /**
-     * @param blockNum - the block in the grid (0 - 8)
-     * @param innerRowNum - the row within the block (0, 1, or 2)
-     * @return the actual row number corresponding to the inner row of the block
-     */
-    private int getRowNum(int blockNum, int innerRowNum) {
-        return blockNum - blockNum%3 + innerRowNum;
+    @Override
+    public Finding find(Grid grid) {
+        return scan(grid, null);
     }
 
-    private void removeValFromOtherTwoThirdsOfRow(Cell[] row, int thirdToKeep, int val) {
-        for (int i = 0; i < 9; i++) {
-            if(i/3 != thirdToKeep) {
-                row[i].removePossibleVal(val);
-            }
-        }
+    @Override
+    public int findAll(Grid grid, List<Finding> findings) {
+        int numBefore = findings.size();
+        scan(grid, findings);
+        return findings.size() - numBefore;
     }
 
-    private boolean valueExistsInRestOfRow(Grid grid, int blockNum, int rowNum, int val) {
-        Cell[] row = grid.getRow(getRowNum(blockNum, rowNum));
-        BitSet bitSet = new BitSet(10);
-        for (int i = 0; i < 9; i++) {
-            if(i/3 != blockNum%3) {
-                bitSet.or(row[i].getBits());
+    /**
+     * Searches the box-line intersections of each block for values confined to the intersection within the block,
+     * which can be removed from the rest of that row or column. The values are found by the CandidateScanner in use.
+     * @param findings - if null, the search stops at the first finding and returns it.
+     *                   Otherwise every finding is added to it and null is returned.
+     */
+    private Finding scan(Grid grid, List<Finding> findings) {
+        Topology topology = grid.getTopology();
+        int[] vals = new int[topology.getNumIntersections()];
+        CandidateScanner.get().findPointingVals(grid, vals);
+
+        // Each block has an intersection with each of its rows, then each of its columns (6 on a 9x9 grid)
+        int perBlock = 2 * topology.getBoxSize();
+        for(int blockNum = 0; blockNum < grid.getSize(); blockNum++) {
+            int first = perBlock * blockNum;
+            int blockVals = 0;
+            for (int i = 0; i < perBlock; i++) {
+                blockVals |= vals[first + i];
             }
-        }
-        return bitSet.get(val);
-    }
 
-    private boolean valueConfinedToRowInBlock(Cell[] block, int rowNum, int val) {
-        Cell c1 = block[rowNum*3];
-        Cell c2 = block[rowNum*3 + 1];
-        Cell c3 = block[rowNum*3 + 2];
-
-        BitSet combo12 = (BitSet)c1.getBits().clone();
-        combo12.and(c2.getBits());
-        BitSet combo13 = (BitSet)c1.getBits().clone();
-        combo13.and(c3.getBits());
-        BitSet combo23 = (BitSet)c2.getBits().clone();
-        combo23.and(c3.getBits());
-        BitSet combo123 = (BitSet)c1.getBits().clone();
-        combo123.and(c2.getBits());
-        combo123.and(c3.getBits());
-
-        // Make sure one combination of two or more cells contains the number
-        if(! (combo123.get(val) || combo12.get(val) ||combo13.get(val) ||combo23.get(val)))
-            return false;
-
-        BitSet restOfBits = new BitSet(10);
-        // We know val is in bitSet and row. Now check that it is NOT in other rows within the block.
-        for(int i = 0; i < 3; i++) {
-            if(i != rowNum) {
-                restOfBits.or(block[i*3].getBits());
-                restOfBits.or(block[i*3+1].getBits());
-                restOfBits.or(block[i*3+2].getBits());
+            // Go through the vals in order, checking each row then each column of the block
+            for (; blockVals != 0; blockVals &= blockVals - 1) {
+                int num = Integer.numberOfTrailingZeros(blockVals);
+                for (int i = 0; i < perBlock; i++) {
+                    if((vals[first + i] & (1 << num)) != 0) {
+                        Finding finding = pointingFinding(grid, first + i, num);
+                        if(findings == null)
+                            return finding;
+                        findings.add(finding);
+                    }
+                }
             }
         }
-
-        return !restOfBits.get(val);
+        return null;
     }
 
-    private boolean valueConfinedToColInBlock(Cell[] block, int colNum, int val) {
-        Cell c1 = block[colNum];
-        Cell c2 = block[colNum + 3];
-        Cell c3 = block[colNum + 6];
-
-        BitSet combo12 = (BitSet)c1.getBits().clone();
-        combo12.and(c2.getBits());
-        BitSet combo13 = (BitSet)c1.getBits().clone();
-        combo13.and(c2.getBits());
-        BitSet combo23 = (BitSet)c2.getBits().clone();
-        combo23.and(c3.getBits());
-        BitSet combo123 = (BitSet)c1.getBits().clone();
-        combo123.and(c2.getBits());
-        combo123.and(c3.getBits());
-
-        // Make sure one combination of two or more cells contains the number
-        if(! (combo123.get(val) || combo12.get(val) ||combo13.get(val) ||combo23.get(val)))
-            return false;
-
-        BitSet restOfBits = new BitSet(10);
-        // We know val is in bitSet and col. Now check that it is NOT in other cols within the block.
-        for(int i = 0; i < 3; i++) {
-            if(i != colNum) {
-                restOfBits.or(block[i].getBits());
-                restOfBits.or(block[i + 3].getBits());
-                restOfBits.or(block[i + 6].getBits());
-            }
+    /**
+     * Builds the finding for val pointing along the intersection's row or column: the cells holding val in the
+     * intersection make the pattern, and val is removed from the cells holding it in the OTHER 2/3 of the line.
+     */
+    private Finding pointingFinding(Grid grid, int intersection, int val) {
+        Topology topology = grid.getTopology();
+        int bit = 1 << val;
+        long[] pattern = Finding.newCellSet(grid);
+        long[] eliminate = Finding.newCellSet(grid);
+        for (int index : topology.getIntersectionCells()[intersection]) {
+            if((grid.getCandidates(index) & bit) != 0)
+                Finding.addCell(pattern, index);
         }
-
-        return !restOfBits.get(val);
-    }
-
-    private boolean valueExistsInRestOfCol(Grid grid, int blockNum, int colNum, int val) {
-        Cell[] column = grid.getCol(getColNum(blockNum, colNum));
-        BitSet bitSet = new BitSet(10);
-        for (int i = 0; i < 9; i++) {
-            if(i/3 != blockNum/3) {
-                bitSet.or(column[i].getBits());
-            }
+        for (int index : topology.getIntersectionRestOfLine()[intersection]) {
+            if((grid.getCandidates(index) & bit) != 0)
+                Finding.addCell(eliminate, index);
         }
-        return bitSet.get(val);
-    }
 
-    /**
-     * @param blockNum - the block in the grid (0 - 8)
-     * @param innerColNum - the col within the block (0, 1, or 2)
-     * @return the actual column number corresponding to the inner column of the block
-     */
-    private int getColNum(int blockNum, int innerColNum) {
-        return 3*(blockNum%3) + innerColNum;
+        int line = topology.getIntersectionLine()[intersection];
+        Region regionType = line < grid.getSize() ? Region.ROW : Region.COLUMN;
+        return Finding.elimination(getType(), regionType, line % grid.getSize(), pattern, eliminate, bit, 1);
     }
 
     @Override
-    public void applyMe(Grid grid) {
-        Cell[] region = grid.getRegion(this.regionType, this.regionNum);
-        for (int i = 0; i < 9; i++) {
-            if(i/3 != this.thirdThatIsPointing)
-                region[i].removePossibleVal(this.pointValue);
-        }
-    }
+    public String describe(Finding finding, Grid grid) {
+        // The pattern cells all lie in the third (on a 9x9 grid) of the region that is pointing
+        int boxSize = grid.getTopology().getBoxSize();
+        Cell firstPointer = grid.getCell(finding.getFirstPatternCell());
+        int thirdThatIsPointing = (finding.getRegion() == Region.COLUMN) ? firstPointer.getRowNum() / boxSize : firstPointer.getColNum() / boxSize;
 
-    @Override
-    public String applyResult() {
         StringBuilder str = new StringBuilder();
-        str.append(getClass().getSimpleName()).append(": Removing val: ").append(pointValue);
-        str.append(" from ").append((regionType == Region.COLUMN) ? "Column": "Row");
-        str.append(" ").append(this.regionNum).append(" except part ");
-        str.append(thirdThatIsPointing).append("/3\n");
+        str.append(getClass().getSimpleName()).append(": Removing val: ").append(Grid.valueToChar(Integer.numberOfTrailingZeros(finding.getEliminateVals())));
+        str.append(" from ").append((finding.getRegion() == Region.COLUMN) ? "Column": "Row");
+        str.append(" ").append(finding.getRegionNum()).append(" except part ");
+        str.append(thirdThatIsPointing).append("/").append(boxSize).append("\n");
         return str.toString();
     }
 }
@@ -1,38 +1,66 @@
 package com.cs261a.sudoku.techniques;
 
 import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.trace.SilentStepListener;
+import com.cs261a.sudoku.trace.StepListener;
+
+import java.util.List;
 
 /**
  * Abstract technique class providing interface to main methods that must be performed by all techniques
+ * Techniques hold no state: what they find is returned as a Finding, so one instance can be shared by all threads.
  */
 public abstract class Technique {
 
-    int numApplications = 0;
+    public abstract TechniqueType getType();
+
+    /**
+     * Returns the first application of this technique in the grid, or null if the technique is not applicable.
+     * The finding also counts all the possible applications of the technique.
+     * @throws BadTechniqueException if the search shows the grid can't be completed
+     */
+    public abstract Finding find(Grid grid) throws BadTechniqueException;
 
-    public int getNumApplications() {
-        return numApplications;
+    /**
+     * Adds every application of this technique in the grid to findings, in the order find would return them.
+     * Findings are made against the same grid state, so later ones may be made redundant by applying earlier
+     * ones; check Finding.isApplicableTo before applying each.
+     * Techniques that don't override this add only their first finding.
+     * @return the number of findings added
+     * @throws BadTechniqueException if the search shows the grid can't be completed
+     */
+    public int findAll(Grid grid, List<Finding> findings) throws BadTechniqueException {
+        Finding finding = find(grid);
+        if(finding == null)
+            return 0;
+        findings.add(finding);
+        return 1;
     }
 
     /**
      * Returns true if this technique is applicable, false otherwise
-     * If true, also finds all possible applications of technique and sets the attribute numApplications.
      */
-    public abstract boolean isApplicable(Grid grid);
+    public boolean isApplicable(Grid grid) throws BadTechniqueException {
+        return find(grid) != null;
+    }
 
     /**
-     * Each technique overrides this, applying their own technique to the grid.
-     * NOTE: This method is hidden from other classes. Must call standard "apply" method.
+     * Applies a finding of this technique to the grid without reporting the step.
+     * Throws BadTechniqueException if the technique results in an invalid game board.
+     * @throws BadTechniqueException
      */
-    protected abstract void applyMe(Grid grid);
+    public final void apply(Grid grid, Finding finding) throws BadTechniqueException {
+        apply(grid, finding, SilentStepListener.INSTANCE);
+    }
 
     /**
-     * Applies a technique to the grid.
+     * Applies a finding of this technique to the grid, then reports the step to the listener.
      * Throws BadTechniqueException if the technique results in an invalid game board.
      * @throws BadTechniqueException
      */
-    public final void apply(Grid grid) throws BadTechniqueException {
-        applyMe(grid);
-        System.out.println(applyResult());
+    public final void apply(Grid grid, Finding finding, StepListener listener) throws BadTechniqueException {
+        finding.applyTo(grid);
+        listener.stepApplied(this, finding, grid);
         if(!grid.isValid())
             throw new BadTechniqueException(this, grid);
     }
@@ -40,12 +68,21 @@ public abstract class Technique {
     /**
      * Exception thrown if a technique results in an invalid game board.
      */
-    public class BadTechniqueException extends Throwable {
+    public static class BadTechniqueException extends Throwable {
+        private final Grid grid;
+
         public BadTechniqueException(Technique technique, Grid grid) {
-            System.err.println("Technique " + technique.getClass().getName() + " led to invalid game board");
-            grid.printVerboseState(System.err);
+            super("Technique " + technique.getClass().getName() + " led to invalid game board");
+            this.grid = grid;
+        }
+
+        public Grid getGrid() {
+            return grid;
         }
     }
 
-    public abstract String applyResult();
+    /**
+     * Describes a finding of this technique that has been applied to the grid
+     */
+    public abstract String describe(Finding finding, Grid grid);
 }
@@ -1,27 +1,47 @@
 package com.cs261a.sudoku.techniques;
 
 /**
- * This class take a techniqueType and gives back an instance of that technique class.
+ * This class take a techniqueType and gives back the instance of that technique class.
+ * Techniques are stateless, so one shared instance of each is handed out.
  */
 public class TechniqueFactory {
 
+    private static final Technique FULL_HOUSE = new FullHouse();
+    private static final Technique HIDDEN_SINGLE = new HiddenSingle();
+    private static final Technique NAKED_SINGLE = new NakedSingle();
+    private static final Technique POINTING = new Pointing();
+    private static final Technique NAKED_PAIR = new NakedPair();
+    private static final Technique HIDDEN_PAIR = new HiddenPair();
+    private static final Technique NAKED_TRIPLE = new NakedTriple();
+    private static final Technique HIDDEN_TRIPLE = new HiddenTriple();
+    private static final Technique NAKED_QUAD = new NakedQuad();
+    private static final Technique HIDDEN_QUAD = new HiddenQuad();
+
     public static Technique getTechnique(TechniqueType type) {
         if(type == null)
             return null;
 
         switch(type) {
             case FullHouse:
-                return new FullHouse();
+                return FULL_HOUSE;
             case HiddenSingle:
-                return new HiddenSingle();
+                return HIDDEN_SINGLE;
             case NakedSingle:
-                return new NakedSingle();
+                return NAKED_SINGLE;
             case Pointing:
-                return new Pointing();
+                return POINTING;
             case NakedPair:
-                return new NakedPair();
+                return NAKED_PAIR;
             case HiddenPair:
-                return new HiddenPair();
+                return HIDDEN_PAIR;
+            case NakedTriple:
+                return NAKED_TRIPLE;
+            case HiddenTriple:
+                return HIDDEN_TRIPLE;
+            case NakedQuad:
+                return NAKED_QUAD;
+            case HiddenQuad:
+                return HIDDEN_QUAD;
             default:
                 throw new EnumConstantNotPresentException(type.getClass(), "Should not reach this state");
         }
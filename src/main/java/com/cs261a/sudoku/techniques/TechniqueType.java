@@ -11,7 +11,11 @@ public enum TechniqueType {
     NakedSingle("Naked Single"),
     Pointing("Pointing"),
     NakedPair("Naked Pair"),
-    HiddenPair("Hidden Pair") {
+    HiddenPair("Hidden Pair"),
+    NakedTriple("Naked Triple"),
+    HiddenTriple("Hidden Triple"),
+    NakedQuad("Naked Quad"),
+    HiddenQuad("Hidden Quad") {
         @Override
         public TechniqueType next() { return null; };
     };
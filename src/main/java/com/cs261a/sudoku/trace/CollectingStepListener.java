@@ -0,0 +1,62 @@
+package com.cs261a.sudoku.trace;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the steps of a solve in memory, for callers that want to inspect or replay them.
+ * Not thread safe: use one per solving thread.
+ */
+public class CollectingStepListener implements StepListener {
+
+    private final List<Finding> steps = new ArrayList<Finding>();
+    private final List<String> descriptions = new ArrayList<String>();
+    private boolean solved;
+
+    @Override
+    public void stepApplied(Technique technique, Finding finding, Grid grid) {
+        steps.add(finding);
+        descriptions.add(technique.describe(finding, grid));
+    }
+
+    @Override
+    public void puzzleSolved(Grid grid) {
+        solved = true;
+    }
+
+    @Override
+    public void puzzleUnsolved(Grid grid, Throwable cause) {
+        solved = false;
+    }
+
+    /**
+     * Returns the findings applied, in order
+     */
+    public List<Finding> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the description of each step, as given by Technique.describe, in order
+     */
+    public List<String> getDescriptions() {
+        return descriptions;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    /**
+     * Forgets all collected steps, so this listener can be used for another puzzle
+     */
+    public void clear() {
+        steps.clear();
+        descriptions.clear();
+        solved = false;
+    }
+}
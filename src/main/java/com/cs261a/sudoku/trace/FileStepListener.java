@@ -0,0 +1,24 @@
+package com.cs261a.sudoku.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the same trace as PrintStepListener to a file, buffered so steps don't each cost a write.
+ * Must be closed to flush the trace.
+ */
+public class FileStepListener extends PrintStepListener implements Closeable {
+
+    public FileStepListener(Path path) throws IOException {
+        super(new PrintStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), false, "US-ASCII"));
+    }
+
+    @Override
+    public void close() {
+        out.close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.cs261a.sudoku.trace;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints each step as it is applied, then the solved board and a numbered list of steps.
+ * If the puzzle can't be solved, prints why along with the full state of the grid.
+ * Not thread safe: use one per solving thread.
+ */
+public class PrintStepListener implements StepListener {
+
+    protected final PrintStream out;
+
+    // Technique name and number of applications found, for each step of the current puzzle
+    private final List<String> steps = new ArrayList<String>();
+
+    public PrintStepListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void stepApplied(Technique technique, Finding finding, Grid grid) {
+        out.println(technique.describe(finding, grid));
+        steps.add(technique.getClass().getSimpleName() + " " + finding.getNumApplications());
+    }
+
+    @Override
+    public void puzzleSolved(Grid grid) {
+        out.println("Puzzle solved!");
+        grid.printCurrentState(out);
+
+        for (int i = 0; i < steps.size(); i++) {
+            out.println("step " + i + " technique " + steps.get(i));
+        }
+        steps.clear();
+    }
+
+    @Override
+    public void puzzleUnsolved(Grid grid, Throwable cause) {
+        out.println(cause.getMessage());
+        grid.printVerboseState(out);
+        steps.clear();
+    }
+}
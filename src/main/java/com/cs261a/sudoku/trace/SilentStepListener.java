@@ -0,0 +1,28 @@
+package com.cs261a.sudoku.trace;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+
+/**
+ * Ignores every step. This is the default listener, so solving builds no trace text unless asked to.
+ */
+public final class SilentStepListener implements StepListener {
+
+    public static final SilentStepListener INSTANCE = new SilentStepListener();
+
+    private SilentStepListener() {
+    }
+
+    @Override
+    public void stepApplied(Technique technique, Finding finding, Grid grid) {
+    }
+
+    @Override
+    public void puzzleSolved(Grid grid) {
+    }
+
+    @Override
+    public void puzzleUnsolved(Grid grid, Throwable cause) {
+    }
+}
@@ -0,0 +1,28 @@
+package com.cs261a.sudoku.trace;
+
+import com.cs261a.sudoku.Grid;
+import com.cs261a.sudoku.techniques.Finding;
+import com.cs261a.sudoku.techniques.Technique;
+
+/**
+ * Receives the steps taken while solving a puzzle, e.g. to print, log, or collect them.
+ * Listeners build any text they need themselves, so a listener that ignores the steps costs nothing.
+ */
+public interface StepListener {
+
+    /**
+     * Called after a finding of a technique has been applied to the grid
+     */
+    void stepApplied(Technique technique, Finding finding, Grid grid);
+
+    /**
+     * Called once the grid is complete
+     */
+    void puzzleSolved(Grid grid);
+
+    /**
+     * Called when solving stops before the grid is complete
+     * @param cause - the exception that stopped the solve
+     */
+    void puzzleUnsolved(Grid grid, Throwable cause);
+}
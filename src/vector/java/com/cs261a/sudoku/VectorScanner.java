@@ -0,0 +1,160 @@
+package com.cs261a.sudoku;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CandidateScanner backend using the jdk.incubator.vector API, at the widest int vector the CPU has
+ * (8 lanes with AVX2, 16 with AVX-512). Loaded by CandidateScanner when selected; compile and run with
+ * --add-modules jdk.incubator.vector. The pointing scan is laid out for 9x9 grids; other sizes use the
+ * scalar one.
+ */
+class VectorScanner extends CandidateScanner {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // Cells rounded up to whole vectors
+    private static final int NUM_CELLS = Topology.STANDARD.getNumCells();
+    private static final int NUM_PADDED = (NUM_CELLS + LANES - 1) / LANES * LANES;
+    private static final int NUM_CHUNKS = NUM_PADDED / LANES;
+
+    // Zeros before and after the cells in the scratch arrays, so shifted loads up to 2 bands away stay in bounds
+    private static final int OFFSET = 64;
+    private static final int SCRATCH_LENGTH = OFFSET + NUM_PADDED + OFFSET;
+
+    // Lane masks over cell positions p (at OFFSET + p): which third of its row p is in (p%9/3), which row of
+    // its band (p/9%3), which column of its stack (p%3) and which band (p/27). Only values 1 and 2 are needed;
+    // 0 is the default of each blend.
+    private static final List<VectorMask<Integer>> THIRDS = buildThirds();
+    private static final int STACK = 0, ROW_IN_BAND = 2, COL_IN_STACK = 4, BAND = 6;
+
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[7][SCRATCH_LENGTH]);
+
+    // THIRDS.get(NUM_CHUNKS * k + chunk) is the lane mask of kind k over the chunk's LANES positions.
+    // A list, as arrays of a generic type can't be created without a raw type.
+    private static List<VectorMask<Integer>> buildThirds() {
+        List<VectorMask<Integer>> thirds = new ArrayList<VectorMask<Integer>>(8 * NUM_CHUNKS);
+        boolean[] lanes = new boolean[LANES];
+        for (int k = 0; k < 8; k++) {
+            for (int chunk = 0; chunk < NUM_CHUNKS; chunk++) {
+                for (int lane = 0; lane < LANES; lane++) {
+                    int p = chunk * LANES + lane;
+                    int[] which = {p % 9 / 3, p / 9 % 3, p % 3, p / 27 % 3};
+                    lanes[lane] = which[k / 2] == 1 + k % 2;
+                }
+                thirds.add(VectorMask.fromArray(SPECIES, lanes, 0));
+            }
+        }
+        return thirds;
+    }
+
+    @Override
+    public String getName() {
+        return "vector" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public int findSingleCandidateCells(Grid grid, long[] cells) {
+        int[] candidates = grid.candidateArray();
+        Arrays.fill(cells, 0L);
+        int i = 0;
+        // LANES divides 64, so each vector's lanes land in a single word
+        for (; i + LANES <= candidates.length; i += LANES) {
+            IntVector masks = IntVector.fromArray(SPECIES, candidates, i);
+            // One bit set: non zero, and clearing the lowest bit leaves zero
+            VectorMask<Integer> single = masks.compare(VectorOperators.NE, 0)
+                    .and(masks.and(masks.sub(1)).compare(VectorOperators.EQ, 0));
+            cells[i >>> 6] |= single.toLong() << (i & 63);
+        }
+        // The cells left over after the last whole vector
+        for (; i < candidates.length; i++) {
+            int mask = candidates[i];
+            if(mask != 0 && (mask & (mask - 1)) == 0)
+                cells[i >>> 6] |= 1L << i;
+        }
+
+        int count = 0;
+        for (long bits : cells) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Works on every cell position p at once, then reads off the positions where intersections start.
+     * For rows, the triple at p is cells p, p+1, p+2 (a row intersection when p%3 == 0); for columns,
+     * cells p, p+9, p+18 (a column intersection when p is in the top row of a band). The other triples of
+     * the same line or block are then 3 or 6 cells, 9 or 18 cells, 1 or 2 cells, or 27 or 54 cells away,
+     * in a direction that depends on which third p is in; those are picked with blends.
+     */
+    @Override
+    public void findPointingVals(Grid grid, int[] pointingVals) {
+        if(grid.getTopology() != Topology.STANDARD) {
+            scalar().findPointingVals(grid, pointingVals);
+            return;
+        }
+
+        int[][] scratch = SCRATCH.get();
+        int[] cells = scratch[0];
+        int[] rowOr = scratch[1], rowTwo = scratch[2], colOr = scratch[3], colTwo = scratch[4];
+        int[] rowVals = scratch[5], colVals = scratch[6];
+        System.arraycopy(grid.candidateArray(), 0, cells, OFFSET, NUM_CELLS);
+
+        for (int base = OFFSET; base < OFFSET + NUM_PADDED; base += LANES) {
+            IntVector x0 = IntVector.fromArray(SPECIES, cells, base);
+            IntVector x1 = IntVector.fromArray(SPECIES, cells, base + 1);
+            IntVector x2 = IntVector.fromArray(SPECIES, cells, base + 2);
+            x0.or(x1).or(x2).intoArray(rowOr, base);
+            x0.and(x1).or(x0.and(x2)).or(x1.and(x2)).intoArray(rowTwo, base);
+
+            IntVector y1 = IntVector.fromArray(SPECIES, cells, base + 9);
+            IntVector y2 = IntVector.fromArray(SPECIES, cells, base + 18);
+            x0.or(y1).or(y2).intoArray(colOr, base);
+            x0.and(y1).or(x0.and(y2)).or(y1.and(y2)).intoArray(colTwo, base);
+        }
+
+        for (int base = OFFSET; base < OFFSET + NUM_PADDED; base += LANES) {
+            IntVector rowRestOfLine = others(rowOr, base, 3, STACK);
+            IntVector rowRestOfBlock = others(rowOr, base, 9, ROW_IN_BAND);
+            IntVector.fromArray(SPECIES, rowTwo, base).and(rowRestOfBlock.not()).and(rowRestOfLine).intoArray(rowVals, base);
+
+            IntVector colRestOfLine = others(colOr, base, 27, BAND);
+            IntVector colRestOfBlock = others(colOr, base, 1, COL_IN_STACK);
+            IntVector.fromArray(SPECIES, colTwo, base).and(colRestOfBlock.not()).and(colRestOfLine).intoArray(colVals, base);
+        }
+
+        for (int row = 0; row < 9; row++) {
+            for (int stack = 0; stack < 3; stack++) {
+                pointingVals[6 * (3 * (row / 3) + stack) + row % 3] = rowVals[OFFSET + 9 * row + 3 * stack];
+            }
+        }
+        for (int band = 0; band < 3; band++) {
+            for (int col = 0; col < 9; col++) {
+                pointingVals[6 * (3 * band + col / 3) + 3 + col % 3] = colVals[OFFSET + 27 * band + col];
+            }
+        }
+    }
+
+    /**
+     * Returns, for each position p, the OR of the triples at the other two thirds of p's group of three
+     * triples spaced step apart: p+step and p+2*step for the first third, p-step and p+step for the second,
+     * p-2*step and p-step for the third.
+     */
+    private static IntVector others(int[] triples, int base, int step, int third) {
+        IntVector back2 = IntVector.fromArray(SPECIES, triples, base - 2 * step);
+        IntVector back1 = IntVector.fromArray(SPECIES, triples, base - step);
+        IntVector fwd1 = IntVector.fromArray(SPECIES, triples, base + step);
+        IntVector fwd2 = IntVector.fromArray(SPECIES, triples, base + 2 * step);
+        int chunk = (base - OFFSET) / LANES;
+        VectorMask<Integer> second = THIRDS.get(NUM_CHUNKS * third + chunk);
+        VectorMask<Integer> last = THIRDS.get(NUM_CHUNKS * (third + 1) + chunk);
+        return fwd1.or(fwd2).blend(back1.or(fwd1), second).blend(back2.or(back1), last);
+    }
+}